@@ -0,0 +1,411 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Measures the reading, lookup, numbering and rendering of the Qur'an texts, so the effect of a
+ * change can be shown.
+ *
+ * <p>
+ * Every benchmark is warmed up and then run repeatedly for a fixed time. The throughput and, if
+ * the JVM can count the bytes allocated by a thread, the allocation per operation are reported.
+ * The first read of every file is also reported on its own, as the cold load. Compare runs on the
+ * same machine only.
+ * </p>
+ *
+ * <p>
+ * The parse benchmarks compare streaming all the ayat of a file with StAX, as the packs are built,
+ * to building a DOM and copying the ayat out of it, as the texts were read before. For both the
+ * peak heap of one parse is reported too, in the last column of the peak rows: the heap is
+ * collected and the peaks of the heap pools are reset before the parse, and the heap in use before
+ * it is subtracted from the sum of the peaks after it.
+ * </p>
+ *
+ * <p>
+ * The benchmarks are a separate source folder with its own output folder, so they are not packaged
+ * in the extension.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class QuranBenchmark {
+
+  /**
+   * An operation to measure.
+   */
+  private interface Operation {
+
+    /**
+     * Runs the operation once.
+     *
+     * @return a result, that is used so the operation can't be optimized away
+     */
+    int run();
+  }
+
+  private static final String ARABIC = "Arabic";
+  // fonts with a fixed digit base: ASCII, Arabic-Indic and Extended Arabic-Indic
+  private static final String[] BASE_FONTS =
+      {"KFGQPC Uthmanic Script HAFS", "Scheherazade", "Al Qalam Quran Majeed"};
+  private static final int[] DIGIT_BASES = {AyahNumerals.BASE_ASCII,
+      AyahNumerals.BASE_ARABIC_INDIC, AyahNumerals.BASE_EXTENDED_ARABIC_INDIC,
+      AyahNumerals.BASE_DEVANAGARI, AyahNumerals.BASE_BENGALI};
+  private static final int[] LONGEST_SURAHS = {2, 26, 7};
+  // the parses per peak heap measurement, the median is reported
+  private static final int PEAK_RUNS = 5;
+  private static final int SURAH_COUNT = 114;
+
+  /**
+   * Returns the bytes allocated by the current thread so far.
+   *
+   * @param threads the thread management of the JVM
+   * @return the bytes, or -1 if the JVM can't count them
+   */
+  private static long allocatedBytes(final ThreadMXBean threads) {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the language and version of a Qur'an xml file, as its name without prefix and suffix.
+   *
+   * @param file the file
+   * @return the language and version
+   */
+  private static String getTextName(final File file) {
+    final String name = file.getName();
+    return name.substring("QuranText.".length(), name.length() - ".xml".length());
+  }
+
+  /**
+   * Reads all the ayat of a file by building a DOM and copying the ayat out of it, the way the
+   * texts were read before they were streamed.
+   *
+   * @param file the xml file
+   * @return the store
+   */
+  private static AyahStore readAyatWithDom(final File file) {
+    final Document doc;
+    try {
+      final DocumentBuilderFactory df = DocumentBuilderFactory.newInstance();
+      df.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      df.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+      df.setNamespaceAware(true);
+      doc = df.newDocumentBuilder().parse(file);
+    } catch (ParserConfigurationException | SAXException | IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    final ArrayAyahStore store = new ArrayAyahStore();
+    final NodeList surahs = doc.getElementsByTagName("surah");
+    for (int i = 0; i < surahs.getLength(); i++) {
+      final Element surah = (Element) surahs.item(i);
+      final int surano = Integer.parseInt(surah.getAttribute("no"));
+      final NodeList ayat = surah.getElementsByTagName("ayat");
+      for (int j = 0; j < ayat.getLength(); j++) {
+        store.put(surano, j + 1, ((Element) ayat.item(j)).getAttribute("text"));
+      }
+    }
+    return store;
+  }
+
+  /**
+   * Reads all the ayat of a file by streaming it with StAX.
+   *
+   * @param file the xml file
+   * @return the store
+   */
+  private static AyahStore readAyatWithStax(final File file) {
+    try {
+      return QuranReader.readAyat(file);
+    } catch (XMLStreamException | IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads every ayah of a text, so lazily read surahs are read too.
+   *
+   * @param reader the reader
+   * @return the total length of the ayat
+   */
+  private static int readAll(final QuranReader reader) {
+    int length = 0;
+    for (int s = 1; s <= SURAH_COUNT; s++) {
+      for (final String ayah : reader.getAllAyatOfSuraNo(s)) {
+        length += ayah.length();
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Command line: runs the benchmarks.
+   *
+   * @param args the directory with the Qur'an xml files, default resources/quran, and the
+   *        measuring time per benchmark in milliseconds, default 2000
+   */
+  public static void main(final String[] args) {
+    final File dir = new File(args.length > 0 ? args[0] : "resources/quran");
+    final long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+    final File[] files = dir.listFiles((d, name) -> name.startsWith("QuranText.")
+        && name.toLowerCase().endsWith(".xml"));
+    if (files == null || files.length == 0) {
+      System.err.println("No Qur'an texts in " + dir);
+      System.exit(1);
+      return;
+    }
+    Arrays.sort(files);
+    new QuranBenchmark(millis).run(files);
+  }
+
+  private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+  private final long millis;
+  private int sink;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private QuranBenchmark(final long millis) {
+    this.millis = millis;
+    for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+  }
+
+  /**
+   * Returns the heap in use, summed over the heap pools.
+   *
+   * @param peak true for the peaks since the last reset, false for the current use
+   * @return the bytes
+   */
+  private long heapUsed(final boolean peak) {
+    long used = 0;
+    for (final MemoryPoolMXBean pool : heapPools) {
+      used += (peak ? pool.getPeakUsage() : pool.getUsage()).getUsed();
+    }
+    return used;
+  }
+
+  /**
+   * Warms up an operation, then measures it and prints the result.
+   *
+   * @param name the name of the benchmark
+   * @param operation the operation
+   */
+  private void measure(final String name, final Operation operation) {
+    final long warmUpEnd = System.nanoTime() + millis * 500_000L;
+    while (System.nanoTime() < warmUpEnd) {
+      sink += operation.run();
+    }
+
+    final long bytesBefore = allocatedBytes(threads);
+    final long started = System.nanoTime();
+    final long end = started + millis * 1_000_000L;
+    long operations = 0;
+    long now;
+    do {
+      sink += operation.run();
+      operations++;
+      now = System.nanoTime();
+    } while (now < end);
+    final long bytesAfter = allocatedBytes(threads);
+
+    final double nanosPerOperation = (double) (now - started) / operations;
+    final String allocation = bytesBefore < 0 ? "n/a"
+        : String.format(Locale.ROOT, "%.0f", (double) (bytesAfter - bytesBefore) / operations);
+    System.out.println(String.format(Locale.ROOT, "%-52s %14.1f %14.1f %12s", name,
+        1e9 / nanosPerOperation, nanosPerOperation, allocation));
+  }
+
+  /**
+   * Measures the peak heap of single runs of an operation and prints the median.
+   *
+   * @param name the name of the benchmark
+   * @param operation the operation
+   */
+  private void measurePeakHeap(final String name, final Operation operation) {
+    final long[] peaks = new long[PEAK_RUNS];
+    for (int i = 0; i < PEAK_RUNS; i++) {
+      System.gc();
+      System.gc();
+      final long before = heapUsed(false);
+      for (final MemoryPoolMXBean pool : heapPools) {
+        pool.resetPeakUsage();
+      }
+      sink += operation.run();
+      peaks[i] = heapUsed(true) - before;
+    }
+    Arrays.sort(peaks);
+    System.out.println(String.format(Locale.ROOT, "%-52s %14s %14s %12d", name, "-", "-",
+        peaks[PEAK_RUNS / 2]));
+  }
+
+  /**
+   * Runs all benchmarks.
+   *
+   * @param files the Qur'an xml files
+   */
+  private void run(final File[] files) {
+    System.out.println(String.format(Locale.ROOT,
+        "Java %s on %s, %d processors, %d ms per benchmark", System.getProperty("java.version"),
+        System.getProperty("os.arch"), Runtime.getRuntime().availableProcessors(), millis));
+    System.out.println(String.format(Locale.ROOT, "%-52s %14s %14s %12s", "benchmark", "ops/s",
+        "ns/op", "B/op"));
+
+    // the first read of a file in this JVM, before anything is warmed up
+    for (final File file : files) {
+      final long started = System.nanoTime();
+      sink += readAll(new QuranReader(file));
+      System.out.println(String.format(Locale.ROOT, "%-52s %14s %14.1f %12s",
+          "load.cold " + getTextName(file), "-", (double) (System.nanoTime() - started), "-"));
+    }
+    for (final File file : files) {
+      measure("load.warm " + getTextName(file), () -> readAll(new QuranReader(file)));
+    }
+    for (final File file : files) {
+      measure("parse.dom " + getTextName(file), () -> readAyatWithDom(file).get(0).length());
+      measure("parse.stax " + getTextName(file), () -> readAyatWithStax(file).get(0).length());
+    }
+    for (final File file : files) {
+      measurePeakHeap("peak.dom " + getTextName(file), () -> readAyatWithDom(file).get(0).length());
+      measurePeakHeap("peak.stax " + getTextName(file),
+          () -> readAyatWithStax(file).get(0).length());
+    }
+
+    final File arabicFile = new File(files[0].getParentFile(), "QuranText.Arabic.Medina.xml");
+    final QuranReader reader = new QuranReader(arabicFile.isFile() ? arabicFile : files[0]);
+    sink += readAll(reader);
+
+    measure("lookup.sequential getAyahNoOfSuraNo", () -> {
+      int length = 0;
+      for (int s = 1; s <= SURAH_COUNT; s++) {
+        final long size = QuranReader.getSurahSize(s);
+        for (long a = 1; a <= size; a++) {
+          length += reader.getAyahNoOfSuraNo(s, a).length();
+        }
+      }
+      return length;
+    });
+    final Random random = new Random(42);
+    final int[] surahs = new int[4096];
+    final long[] ayat = new long[surahs.length];
+    for (int i = 0; i < surahs.length; i++) {
+      surahs[i] = 1 + random.nextInt(SURAH_COUNT);
+      ayat[i] = 1 + random.nextInt((int) QuranReader.getSurahSize(surahs[i]));
+    }
+    measure("lookup.random getAyahNoOfSuraNo x4096", () -> {
+      int length = 0;
+      for (int i = 0; i < surahs.length; i++) {
+        length += reader.getAyahNoOfSuraNo(surahs[i], ayat[i]).length();
+      }
+      return length;
+    });
+    for (final int surah : LONGEST_SURAHS) {
+      measure("range getAyatFromToOfSuraNo surah " + surah, () -> {
+        int length = 0;
+        for (final String ayah : reader.getAyatFromToOfSuraNo(surah, 1,
+            QuranReader.getSurahSize(surah))) {
+          length += ayah.length();
+        }
+        return length;
+      });
+    }
+
+    for (final String font : BASE_FONTS) {
+      measure(String.format(Locale.ROOT, "number 1-286 base 0x%04X",
+          InsertionPlan.getFontNumberBase(font, true)), () -> {
+            int length = 0;
+            for (long n = 1; n <= 286; n++) {
+              length += InsertionPlan.numToAyatNumber(n, font).length();
+            }
+            return length;
+          });
+    }
+    for (final int base : DIGIT_BASES) {
+      final AyahNumerals numerals = AyahNumerals.forBase(base);
+      measure(String.format(Locale.ROOT, "marker 1-286 rtl+ltr base 0x%04X", base), () -> {
+        int length = 0;
+        for (long n = 1; n <= AyahNumerals.MAX_AYAH; n++) {
+          length += numerals.getMarker(n, true).length() + numerals.getMarker(n, false).length();
+        }
+        return length;
+      });
+    }
+
+    final InsertionPlan.AyatSource source = new InsertionPlan.AyatSource() {
+
+      @Override
+      public List<String> getAyat(final String language, final String version,
+          final int surahNumber, final long from, final long to) {
+        return reader.getAyatFromToOfSuraNo(surahNumber, from, to);
+      }
+
+      @Override
+      public String getBismillah(final String language, final String version) {
+        return reader.getBismillah();
+      }
+    };
+    for (final InsertionPlan.Layout layout : InsertionPlan.Layout.values()) {
+      measure("plan+render surah 2 " + layout.name().toLowerCase(Locale.ROOT), () -> {
+        final InsertionPlan plan = InsertionPlan.builder().surahs(2, 2).layout(layout)
+            .text(ARABIC, "Medina", BASE_FONTS[1]).build();
+        int length = 0;
+        for (final InsertionPlan.Batch batch : plan.getBatches()) {
+          if (layout == InsertionPlan.Layout.TABLE) {
+            length += plan.renderTable(batch, source).length;
+          } else {
+            for (final InsertionPlan.Paragraph paragraph : plan.render(batch, source)) {
+              length += paragraph.getText().length();
+            }
+          }
+        }
+        return length;
+      });
+    }
+    measure("plan whole Qur'an line-by-line", () -> InsertionPlan.builder().surahs(1, 114)
+        .text(ARABIC, "Medina", BASE_FONTS[1]).build().getBatches().size());
+
+    // print the sink, so none of the results can be optimized away, apart from the results
+    System.err.println("(" + sink + ")");
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.comp;
+
+import com.sun.star.beans.NamedValue;
+import com.sun.star.lang.XSingleComponentFactory;
+import com.sun.star.lib.uno.helper.Factory;
+import com.sun.star.lib.uno.helper.WeakBase;
+import com.sun.star.registry.XRegistryKey;
+import com.sun.star.uno.Any;
+import com.sun.star.uno.AnyConverter;
+import com.sun.star.uno.XComponentContext;
+import java.util.List;
+import nl.mossoft.loeiqt.helper.QuranCatalog;
+import nl.mossoft.loeiqt.helper.QuranReaderCache;
+import nl.mossoft.loeiqt.helper.UserSettings;
+
+/**
+ * Startup job that preloads the Qur'an texts the dialog will most likely need.
+ *
+ * <p>
+ * The job is registered in Jobs.xcu for the onFirstVisibleTask event and is opt-in: it only runs
+ * when the Enabled argument of its job configuration is set to true. It preloads the last used, or
+ * else the first, Arabic version and the last used translation, with all their surahs, on a low
+ * priority daemon thread.
+ * </p>
+ *
+ * @author abdullah (mossie@mossoft.nl)
+ */
+public final class WarmUpJobImpl extends WeakBase
+    implements com.sun.star.lang.XServiceInfo, com.sun.star.task.XJob {
+
+  private static final String ARABIC = "Arabic";
+  private static final String IMPLEMENTATIONNAME = WarmUpJobImpl.class.getName();
+  private static final String[] SERVICENAMES = {"nl.mossoft.loeiqt.WarmUpJob"};
+
+  /**
+   * Get a Component Factory.
+   *
+   * @param implementationName name of implementation
+   * @return Component Factory
+   */
+  public static XSingleComponentFactory __getComponentFactory(final String implementationName) {
+    XSingleComponentFactory factory = null;
+
+    if (implementationName.equals(IMPLEMENTATIONNAME)) {
+      factory = Factory.createComponentFactory(WarmUpJobImpl.class, SERVICENAMES);
+    }
+    return factory;
+  }
+
+  /**
+   * Registers the implemented services.
+   *
+   * @param registryKey the registration key.
+   * @return true if successful
+   */
+  public static boolean __writeRegistryServiceInfo(final XRegistryKey registryKey) {
+    return Factory.writeRegistryServiceInfo(IMPLEMENTATIONNAME, SERVICENAMES, registryKey);
+  }
+
+  /**
+   * Returns true if the job configuration has the argument Enabled set to true.
+   *
+   * @param arguments the arguments of the job
+   * @return true if enabled
+   */
+  private static boolean isEnabled(final NamedValue[] arguments) {
+    for (final NamedValue argument : arguments) {
+      if (!"JobConfig".equals(argument.Name)) {
+        continue;
+      }
+      try {
+        for (final NamedValue config : (NamedValue[]) AnyConverter.toArray(argument.Value)) {
+          if ("Enabled".equals(config.Name)) {
+            return AnyConverter.toBoolean(config.Value);
+          }
+        }
+      } catch (final com.sun.star.lang.IllegalArgumentException | ClassCastException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private final XComponentContext context;
+
+  /**
+   * The constructor.
+   *
+   * @param context the component context.
+   */
+  public WarmUpJobImpl(final XComponentContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Starts the preloading, if enabled, and returns without waiting for it.
+   */
+  @Override
+  public Object execute(final NamedValue[] arguments) {
+    if (isEnabled(arguments)) {
+      final UserSettings settings = UserSettings.load(context);
+
+      final String arabicVersion = getArabicVersion(settings);
+      if (arabicVersion != null) {
+        QuranReaderCache.preload(ARABIC, arabicVersion, context);
+      }
+
+      final String translationLanguage = settings.get(UserSettings.LAST_TRANSLATION_LANGUAGE);
+      final String translationVersion = settings.get(UserSettings.LAST_TRANSLATION_VERSION);
+      if (translationLanguage != null && translationVersion != null) {
+        QuranReaderCache.preload(translationLanguage, translationVersion, context);
+      }
+    }
+    return Any.VOID;
+  }
+
+  /**
+   * Returns the Arabic version the dialog will select: the last used one, or else the first.
+   *
+   * @param settings the user settings
+   * @return the version or null if there are no Arabic versions
+   */
+  private String getArabicVersion(final UserSettings settings) {
+    final String lastVersion = settings.get(UserSettings.LAST_ARABIC_VERSION);
+    if (lastVersion != null) {
+      return lastVersion;
+    }
+    final List<QuranCatalog.Entry> versions = QuranCatalog.get(context).getEntries(ARABIC, true);
+    return versions.isEmpty() ? null : versions.get(0).getVersion();
+  }
+
+  /**
+   * Returns the implementation name.
+   */
+  @Override
+  public String getImplementationName() {
+    return IMPLEMENTATIONNAME;
+  }
+
+  /**
+   * Returns the suppported services.
+   */
+  @Override
+  public String[] getSupportedServiceNames() {
+    return SERVICENAMES;
+  }
+
+  /**
+   * returns true if a service is supported.
+   */
+  @Override
+  public boolean supportsService(final String service) {
+    final int len = SERVICENAMES.length;
+
+    for (int i = 0; i < len; i++) {
+      if (service.equals(SERVICENAMES[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -26,7 +26,9 @@ import com.sun.star.awt.XProgressBar;
 import com.sun.star.beans.PropertyVetoException;
 import com.sun.star.beans.UnknownPropertyException;
 import com.sun.star.beans.XPropertySet;
+import com.sun.star.document.XUndoManager;
 import com.sun.star.frame.XController;
+import com.sun.star.frame.XModel;
 import com.sun.star.lang.WrappedTargetException;
 import com.sun.star.text.ControlCharacter;
 import com.sun.star.text.XParagraphCursor;
@@ -37,26 +39,56 @@ import com.sun.star.text.XTextViewCursor;
 import com.sun.star.text.XTextViewCursorSupplier;
 import com.sun.star.uno.UnoRuntime;
 import com.sun.star.uno.XComponentContext;
-import java.awt.Font;
-import java.awt.GraphicsEnvironment;
-import java.io.File;
-import java.io.FilenameFilter;
+import com.sun.star.util.InvalidStateException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import nl.mossoft.loeiqt.helper.DialogHelper;
 import nl.mossoft.loeiqt.helper.DocumentHelper;
-import nl.mossoft.loeiqt.helper.FileHelper;
+import nl.mossoft.loeiqt.helper.FlatOdfFragment;
+import nl.mossoft.loeiqt.helper.FontCatalog;
+import nl.mossoft.loeiqt.helper.GlyphCoverage;
+import nl.mossoft.loeiqt.helper.InsertionPlan;
+import nl.mossoft.loeiqt.helper.InsertionPlan.Paragraph;
+import nl.mossoft.loeiqt.helper.PassageWriter;
+import nl.mossoft.loeiqt.helper.ProgressReporter;
+import nl.mossoft.loeiqt.helper.QuranCatalog;
 import nl.mossoft.loeiqt.helper.QuranReader;
+import nl.mossoft.loeiqt.helper.QuranReaderCache;
+import nl.mossoft.loeiqt.helper.UserSettings;
 
 public class InsertQuranTextDialog implements XDialogEventHandler {
 
+  /**
+   * The selections of the dialog an insertion needs, taken when OK is pressed. The writer thread
+   * only reads this, not the fields that follow the controls while it writes.
+   */
+  private static final class Insertion {
+
+    private final double[] fontSizes;
+    private final boolean pageBreak;
+    private final InsertionPlan plan;
+
+    private Insertion(final InsertionPlan plan, final double[] fontSizes,
+        final boolean pageBreak) {
+      this.plan = plan;
+      this.fontSizes = fontSizes;
+      this.pageBreak = pageBreak;
+    }
+  }
+
   private static final String ARABIC = "Arabic";
+  private static final int BATCH_QUEUE_SIZE = 4;
   private static final String DIALOG_ALL_AYAT_CHECKBOX_ID = "AllAyatCheckBoxID";
   private static final String DIALOG_ARABIC_CHECKBOX_ID = "ArabicCheckBoxID";
   private static final String DIALOG_ARABIC_FONT_GROUPBOX_ID = "ArabicFontGroupBoxID";
@@ -68,11 +100,16 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   private static final String DIALOG_ARABIC_LISTBOX_ID = "ArabicListBoxID";
   private static final String DIALOG_AYAT_FROM_NUMERIC_FIELD_ID = "AyatFromNumericFieldID";
   private static final String DIALOG_AYAT_TO_NUMERIC_FIELD_ID = "AyatToNumericFieldID";
+  private static final String DIALOG_CANCEL_BUTTON_ID = "CancelButtonID";
   private static final String DIALOG_LINE_BY_LINE_CHECKBOX_ID = "LineByLineCheckBoxID";
   private static final String DIALOG_LINE_BY_LINE_LABEL_ID = "LineBylineLabelID";
   private static final String DIALOG_MISCELLANEOUS_GROUPBOX_ID = "MiscellaneousGroupBoxID";
   private static final String DIALOG_OK_BUTTON_ID = "OkButtonID";
+  private static final String DIALOG_PAGE_BREAK_CHECKBOX_ID = "PageBreakCheckBoxID";
   private static final String DIALOG_SURAH_LISTBOX_ID = "SurahListBoxID";
+  private static final String DIALOG_SURAH_TO_LISTBOX_ID = "SurahToListBoxID";
+  private static final String DIALOG_TABLE_CHECKBOX_ID = "TableCheckBoxID";
+  private static final String DIALOG_TABLE_LABEL_ID = "TableLabelID";
   private static final String DIALOG_TRANSLATION_CHECKBOX_ID = "TranslationCheckBoxID";
   private static final String DIALOG_TRANSLATION_FONT_GROUPBOX_ID = "TranslationFontGroupBoxID";
   private static final String DIALOG_TRANSLATION_FONT_LABEL_ID = "TranslationFontLabelID";
@@ -84,7 +121,11 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   private static final String DIALOG_TRANSLITERATION_CHECKBOX_ID = "TransliterationCheckBoxID";
   private static final String DIALOG_TRANSLITERATION_LISTBOX_ID = "TransliterationListBoxID";
   private static final String DIALOG_WRITE_SURAH_PROGRESSBAR = "WriteSurahProgressBar";
-  private static final String LEFT_PARENTHESIS = new String(Character.toChars(0xFD3E));
+  // markers for the end of the batches, compared by identity
+  private static final List<Paragraph> END_OF_BATCHES = new ArrayList<>(0);
+  private static final List<Paragraph> FAILED_BATCHES = new ArrayList<>(0);
+  // added to the fonts that can't display all characters of the selected Arabic version
+  private static final String INCOMPLETE_FONT_SUFFIX = " (incomplete)";
   private static final String ON_ALL_AYAT_CHECKBUTTON_PRESSED = "onAllAyatCheckButtonPressed";
   private static final String ON_ARABIC_CHECKBUTTON_PRESSED = "onArabicCheckButtonPressed";
   private static final String ON_ARABIC_FONT_SELECTED = "onArabicFontSelected";
@@ -92,10 +133,14 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   private static final String ON_ARABIC_VERSION_SELECTED = "onArabicVersionSelected";
   private static final String ON_AYAT_FROM_TEXT_CHANGED = "onAyatFromTextChanged";
   private static final String ON_AYAT_TO_TEXT_CHANGED = "onAyatToTextChanged";
+  private static final String ON_CANCEL_BUTTON_PRESSED = "onCancelButtonPressed";
   private static final String ON_LINE_BY_LINE_CHECKBUTTON_PRESSED =
       "onLineByLineCheckButtonPressed";
   private static final String ON_OK_BUTTON_PRESSED = "onOkButtonPressed";
+  private static final String ON_PAGE_BREAK_CHECKBUTTON_PRESSED = "onPageBreakCheckButtonPressed";
   private static final String ON_SURAH_SELECTED = "onSurahSelected";
+  private static final String ON_SURAH_TO_SELECTED = "onSurahToSelected";
+  private static final String ON_TABLE_CHECKBUTTON_PRESSED = "onTableCheckButtonPressed";
   private static final String ON_TRANSLATION_CHECKBUTTON_PRESSED =
       "onTranslationCheckButtonPressed";
   private static final String ON_TRANSLATION_FONT_SELECTED = "onTranslationFontSelected";
@@ -106,8 +151,8 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
       "onTransliterationCheckButtonPressed";
   private static final String ON_TRANSLITERATION_VERSION_SELECTED =
       "onTransliterationVersionSelected";
-  private static final String RIGHT_PARENTHESIS = new String(Character.toChars(0xFD3F));
   private static final String TRANSLITERATION = "Transliteration";
+  private static final String UNDO_TITLE = "Insert Qur'an text";
 
   /**
    * Convert boolean to short.
@@ -120,30 +165,15 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   }
 
   /**
-   * get the codepoint for zero in the font.
+   * Transforms the listbox item of a font listbox into a font name.
    *
-   * @param fontname the fontname
-   * @return base
-   */
-  private static int getFontNumberBase(final String fontname) {
-    final Map<String, Integer> fontmap = new LinkedHashMap<>();
-
-    fontmap.put("Al Qalam Quran Majeed", 0x06F0);
-    fontmap.put("Al Qalam Quran Majeed 1", 0x06F0);
-    fontmap.put("Al Qalam Quran Majeed 2", 0x06F0);
-    fontmap.put("Noto Nastaliq Urdu", 0x0660);
-    fontmap.put("KFGQPC Uthmanic Script HAFS", 0x0030);
-    fontmap.put("me_quran", 0x0660);
-    fontmap.put("Scheherazade", 0x0660);
-    fontmap.put("Scheherazade quran", 0x0660);
-    fontmap.put("Scheherazade New quran", 0x0660);
-    
-    if (fontmap.containsKey(fontname)) {
-      return fontmap.get(fontname);
-    } else {
-      return 0x0030;
-
-    }
+   * @param item the listbox item
+   * @return the font name
+   */
+  private static String getItemFontName(final String item) {
+    return item.endsWith(INCOMPLETE_FONT_SUFFIX)
+        ? item.substring(0, item.length() - INCOMPLETE_FONT_SUFFIX.length())
+        : item;
   }
 
   /**
@@ -168,58 +198,67 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     return itemsSelected[1].replace(")", " ").trim().replace(" ", "_");
   }
 
-  private static short getLanguageWritingMode(final String language) {
-    final Map<String, Short> directionmap = new LinkedHashMap<>();
-
-    directionmap.put("Arabic", com.sun.star.text.WritingMode2.RL_TB);
-    directionmap.put("English", com.sun.star.text.WritingMode2.LR_TB);
-    directionmap.put("Dutch", com.sun.star.text.WritingMode2.LR_TB);
-    directionmap.put("Indonesian", com.sun.star.text.WritingMode2.LR_TB);
-    directionmap.put("Urdu", com.sun.star.text.WritingMode2.RL_TB);
-
-    if (directionmap.containsKey(language)) {
-      return directionmap.get(language);
-    } else {
-      return com.sun.star.text.WritingMode2.LR_TB;
-    }
+  /**
+   * Convert short to boolean.
+   *
+   * @param s the short
+   * @return the boolean
+   */
+  private static boolean short2Boolean(final short s) {
+    return s != 0;
   }
 
   /**
-   * Returns the string representation of a number based on language and font.
-   * 
-   * @param n number between 0-9
-   * @param language language
-   * @param fontname fontname
-   * @return number string
+   * Adds the items for text versions to a listbox.
+   *
+   * @param listBox the listbox
+   * @param entries the text versions
    */
-  public static String numToAyatNumber(long n, final String language, final String fontname) {
-    final int base = getFontNumberBase(fontname);
-
-    final StringBuilder as = new StringBuilder();
-    while (n > 0) {
-      as.append(Character.toChars(base + (int) (n % 10)));
-      n = n / 10;
+  private static void addVersionItems(final XListBox listBox,
+      final List<QuranCatalog.Entry> entries) {
+    final String[] items = new String[entries.size()];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = entries.get(i).getLanguage() + " ("
+          + entries.get(i).getVersion().replace("_", " ") + ")";
     }
-    return as.reverse().toString();
+    listBox.addItems(items, listBox.getItemCount());
   }
 
   /**
-   * Convert short to boolean.
+   * Selects the listbox item of a text version, or else the first item.
    *
-   * @param s the short
-   * @return the boolean
+   * @param listBox the listbox
+   * @param language the language of the version or null
+   * @param version the version or null
    */
-  private static boolean short2Boolean(final short s) {
-    return s != 0;
+  private static void selectVersionItem(final XListBox listBox, final String language,
+      final String version) {
+    short pos = 0;
+    if (language != null && version != null) {
+      final String item = language + " (" + version.replace("_", " ") + ")";
+      final String[] items = listBox.getItems();
+      for (short i = 0; i < items.length; i++) {
+        if (items[i].equals(item)) {
+          pos = i;
+          break;
+        }
+      }
+    }
+    listBox.selectItemPos(pos, true);
   }
 
   private final Map<String, Method> actionsMap = new LinkedHashMap<>();
+  private final AtomicBoolean cancelRequested = new AtomicBoolean();
+  private QuranCatalog catalog;
   private String defaultArabicFontName;
   private double defaultArabicFontSize;
   private String defaultTranslationFontName;
   private double defaultTranslationFontSize;
   private final XComponentContext dlgContext;
   private final XDialog dlgDialog;
+  private FontCatalog fontCatalog;
+  private volatile boolean inserted;
+  private volatile RuntimeException preparationFailure;
   private boolean selectedAllAyatInd = true;
   private String selectedArabicFontName = "";
   private double selectedArabicFontSize;
@@ -230,7 +269,10 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   private long selectedAyatTo = 7;
   private boolean selectedLineByLineInd = true;
   private boolean selectedLineNumberInd = true;
+  private boolean selectedPageBreakInd = false;
   private int selectedSurahNo = 1;
+  private int selectedSurahToNo = 1;
+  private boolean selectedTableInd = false;
   private String selectedTranslationFontName = "";
   private double selectedTranslationFontSize;
   private boolean selectedTranslationInd = false;
@@ -239,13 +281,18 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   private boolean selectedTransliterationInd = false;
   private String selectedTransliterationLanguage = "";
   private String selectedTransliterationVersion = "";
+  private final UserSettings settings;
+  private volatile Thread writer;
   private final String[] supportedActions =
       new String[] {ON_ALL_AYAT_CHECKBUTTON_PRESSED, ON_ARABIC_CHECKBUTTON_PRESSED,
           ON_ARABIC_VERSION_SELECTED, ON_ARABIC_FONT_SELECTED, ON_ARABIC_FONT_SIZE_TEXT_CHANGED,
-          ON_AYAT_FROM_TEXT_CHANGED, ON_AYAT_TO_TEXT_CHANGED, ON_LINE_BY_LINE_CHECKBUTTON_PRESSED,
+          ON_AYAT_FROM_TEXT_CHANGED, ON_AYAT_TO_TEXT_CHANGED, ON_CANCEL_BUTTON_PRESSED,
+          ON_LINE_BY_LINE_CHECKBUTTON_PRESSED,
           ON_TRANSLATION_FONT_SELECTED, ON_TRANSLATION_FONT_SIZE_TEXT_CHANGED, ON_OK_BUTTON_PRESSED,
-          ON_SURAH_SELECTED, ON_TRANSLATION_CHECKBUTTON_PRESSED, ON_TRANSLATION_VERSION_SELECTED,
-          ON_TRANSLITERATION_CHECKBUTTON_PRESSED, ON_TRANSLITERATION_VERSION_SELECTED};
+          ON_PAGE_BREAK_CHECKBUTTON_PRESSED, ON_SURAH_SELECTED, ON_SURAH_TO_SELECTED,
+          ON_TABLE_CHECKBUTTON_PRESSED, ON_TRANSLATION_CHECKBUTTON_PRESSED,
+          ON_TRANSLATION_VERSION_SELECTED, ON_TRANSLITERATION_CHECKBUTTON_PRESSED,
+          ON_TRANSLITERATION_VERSION_SELECTED};
 
 
   /**
@@ -256,6 +303,7 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   public InsertQuranTextDialog(final XComponentContext context) {
     dlgDialog = DialogHelper.createDialog("InsertQuranTextDialog.xdl", context, this);
     dlgContext = context;
+    settings = UserSettings.load(context);
   }
 
   /**
@@ -275,46 +323,6 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     return false;
   }
 
-  /**
-   * Gets a ayat for the selected Surah.
-   *
-   * @param surahno the surah number
-   * @param ayahno the ayat number
-   * @param language the language to be used
-   * @param version the text version to be used
-   * @param fontname the font used to write the text
-   * @return the ayat
-   *
-   */
-  private String getAyahLine(final int surahno, final long ayahno, final String language,
-      final String version, String fontName) {
-
-    final QuranReader qr = new QuranReader(language, version, dlgContext);
-
-    String line = qr.getAyahNoOfSuraNo(surahno, ayahno);
-    if (selectedLineNumberInd) {
-      if (getLanguageWritingMode(language) == com.sun.star.text.WritingMode2.RL_TB) {
-        line = line + " " + RIGHT_PARENTHESIS + numToAyatNumber(ayahno, language, fontName)
-            + LEFT_PARENTHESIS + " ";
-      } else {
-        line = "(" + numToAyatNumber(ayahno, language, fontName) + ") " + line;
-      }
-    }
-    return line;
-  }
-
-  /**
-   * Gets the text Bismillah in the language from a text version.
-   *
-   * @param language the language to be used
-   * @param version the text version to be used
-   * @return the text
-   */
-  private String getBismillah(final String language, final String version) {
-    final QuranReader qr = new QuranReader(language, version, dlgContext);
-    return qr.getBismillah();
-  }
-
   /**
    * Get the default font for Arabic.
    *
@@ -393,24 +401,15 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   }
 
   /**
-   * Get the available Quran text files.
-   *
-   * @return list of files
-   */
-  private List<String> getQuranTxtFiles() {
-    final File path = FileHelper.getFilePath("resources/quran", dlgContext);
-    final String[] files = path.list(new FilenameFilter() {
-      public boolean accept(File dir, String name) {
-        if (name.toLowerCase().endsWith(".xml")) {
-          return true;
-        } else {
-          return false;
-        }
-      }
-    });
-    final List<String> fns = Arrays.asList(files);
-    Collections.sort(fns);
-    return fns;
+   * Enables the selection of ayat, that is only possible for a single surah.
+   */
+  private void enableAyatSelection() {
+    final boolean singleSurah = selectedSurahNo == selectedSurahToNo;
+    DialogHelper.enableComponent(dlgDialog, DIALOG_ALL_AYAT_CHECKBOX_ID, singleSurah);
+    DialogHelper.enableButton(dlgDialog, DIALOG_AYAT_FROM_NUMERIC_FIELD_ID,
+        singleSurah && !selectedAllAyatInd);
+    DialogHelper.enableButton(dlgDialog, DIALOG_AYAT_TO_NUMERIC_FIELD_ID,
+        singleSurah && !selectedAllAyatInd);
   }
 
   /**
@@ -469,8 +468,14 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     DialogHelper.enableComponent(dlgDialog, DIALOG_MISCELLANEOUS_GROUPBOX_ID,
         selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
     DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_CHECKBOX_ID,
-        selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
+        (selectedArabicInd || selectedTranslationInd || selectedTransliterationInd)
+            && !selectedTableInd);
     DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_LABEL_ID,
+        (selectedArabicInd || selectedTranslationInd || selectedTransliterationInd)
+            && !selectedTableInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_TABLE_CHECKBOX_ID,
+        selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_TABLE_LABEL_ID,
         selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
   }
 
@@ -482,7 +487,8 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     final XListBox dlgArabicFontListBox =
         DialogHelper.getListBox(dlgDialog, DIALOG_ARABIC_FONT_LISTBOX_ID);
 
-    selectedArabicFontName = dlgArabicFontListBox.getSelectedItem();
+    selectedArabicFontName =
+        InsertQuranTextDialog.getItemFontName(dlgArabicFontListBox.getSelectedItem());
   }
 
   /**
@@ -507,6 +513,7 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
         InsertQuranTextDialog.getItemLanguague(dlgArabicListBox.getSelectedItem());
     selectedArabicVersion =
         InsertQuranTextDialog.getItemVersion(dlgArabicListBox.getSelectedItem());
+    markIncompleteArabicFonts();
   }
 
   /**
@@ -542,6 +549,18 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     selectedAyatTo = (long) Math.round(dlgAyatToNumericField.getValue());
   }
 
+  /**
+   * Handler for Cancel button. Closes the dialog, or stops writing the surah after the current
+   * batch.
+   */
+  @SuppressWarnings("unused")
+  private void handleCancelButtonPressed() {
+    if (writer == null) {
+      dlgDialog.endExecute();
+    } else {
+      cancelRequested.set(true);
+    }
+  }
 
   /**
    * Handler for Line By Line CheckButton.
@@ -559,8 +578,48 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
    */
   @SuppressWarnings("unused")
   private void handleOkButtonPressed() {
-    writeSurah(selectedSurahNo);
-    dlgDialog.endExecute();
+    if (writer != null
+        || !selectedArabicInd && !selectedTranslationInd && !selectedTransliterationInd) {
+      return;
+    }
+    DialogHelper.enableComponent(dlgDialog, DIALOG_OK_BUTTON_ID, false);
+    cancelRequested.set(false);
+    final Insertion insertion = createInsertion(selectedSurahNo, selectedSurahToNo);
+    // the dialog keeps handling events, like Cancel, while the surahs are written
+    writer = new Thread(() -> {
+      boolean completed = false;
+      try {
+        completed = writeSurahs(insertion);
+        if (completed) {
+          inserted = true;
+          dlgDialog.endExecute();
+        }
+      } catch (final Throwable e) {
+        // whatever went wrong, the dialog has to be usable again
+        e.printStackTrace();
+        DialogHelper.showErrorMessage(dlgContext, dlgDialog,
+            "Can't insert the Qur'an text: " + e);
+      } finally {
+        if (!completed) {
+          DialogHelper.getProgressBar(dlgDialog, DIALOG_WRITE_SURAH_PROGRESSBAR).setValue(0);
+          DialogHelper.enableComponent(dlgDialog, DIALOG_OK_BUTTON_ID, true);
+        }
+        writer = null;
+      }
+    }, "QuranLO writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Handler for Page Break CheckButton.
+   */
+  @SuppressWarnings("unused")
+  private void handlePageBreakCheckButtonPressed() {
+    final XCheckBox dlgPageBreakCheckbox =
+        DialogHelper.getCheckBox(dlgDialog, DIALOG_PAGE_BREAK_CHECKBOX_ID);
+
+    selectedPageBreakInd = short2Boolean(dlgPageBreakCheckbox.getState());
   }
 
   /**
@@ -572,6 +631,14 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
 
     selectedSurahNo = dlgSurahListBox.getSelectedItemPos() + 1;
 
+    if (selectedSurahToNo < selectedSurahNo) {
+      final XListBox dlgSurahToListBox =
+          DialogHelper.getListBox(dlgDialog, DIALOG_SURAH_TO_LISTBOX_ID);
+      dlgSurahToListBox.selectItemPos((short) (selectedSurahNo - 1), true);
+      selectedSurahToNo = selectedSurahNo;
+    }
+    enableAyatSelection();
+
     final XNumericField dlgAyatFromNumericField =
         DialogHelper.getNumericField(dlgDialog, DIALOG_AYAT_FROM_NUMERIC_FIELD_ID);
     dlgAyatFromNumericField.setValue(1);
@@ -583,6 +650,35 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     selectedAyatTo = (long) Math.round(dlgAyatToNumericField.getValue());
   }
 
+  /**
+   * Handler for Surah To listbox.
+   */
+  @SuppressWarnings("unused")
+  private void handleSurahToSelected() {
+    final XListBox dlgSurahToListBox =
+        DialogHelper.getListBox(dlgDialog, DIALOG_SURAH_TO_LISTBOX_ID);
+
+    if (dlgSurahToListBox.getSelectedItemPos() + 1 < selectedSurahNo) {
+      dlgSurahToListBox.selectItemPos((short) (selectedSurahNo - 1), true);
+    }
+    selectedSurahToNo = dlgSurahToListBox.getSelectedItemPos() + 1;
+    enableAyatSelection();
+  }
+
+  /**
+   * Handler for Table CheckButton. The table layout replaces the line by line and block layouts.
+   */
+  @SuppressWarnings("unused")
+  private void handleTableCheckButtonPressed() {
+    final XCheckBox dlgTableCheckbox =
+        DialogHelper.getCheckBox(dlgDialog, DIALOG_TABLE_CHECKBOX_ID);
+
+    selectedTableInd = short2Boolean(dlgTableCheckbox.getState());
+
+    DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_CHECKBOX_ID, !selectedTableInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_LABEL_ID, !selectedTableInd);
+  }
+
   /**
    * Handler for Translation CheckButton.
    */
@@ -609,8 +705,14 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     DialogHelper.enableComponent(dlgDialog, DIALOG_MISCELLANEOUS_GROUPBOX_ID,
         selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
     DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_CHECKBOX_ID,
-        selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
+        (selectedArabicInd || selectedTranslationInd || selectedTransliterationInd)
+            && !selectedTableInd);
     DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_LABEL_ID,
+        (selectedArabicInd || selectedTranslationInd || selectedTransliterationInd)
+            && !selectedTableInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_TABLE_CHECKBOX_ID,
+        selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_TABLE_LABEL_ID,
         selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
   }
 
@@ -677,8 +779,14 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     DialogHelper.enableComponent(dlgDialog, DIALOG_MISCELLANEOUS_GROUPBOX_ID,
         selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
     DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_CHECKBOX_ID,
-        selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
+        (selectedArabicInd || selectedTranslationInd || selectedTransliterationInd)
+            && !selectedTableInd);
     DialogHelper.enableComponent(dlgDialog, DIALOG_LINE_BY_LINE_LABEL_ID,
+        (selectedArabicInd || selectedTranslationInd || selectedTransliterationInd)
+            && !selectedTableInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_TABLE_CHECKBOX_ID,
+        selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
+    DialogHelper.enableComponent(dlgDialog, DIALOG_TABLE_LABEL_ID,
         selectedArabicInd || selectedTranslationInd || selectedTransliterationInd);
   }
 
@@ -717,26 +825,19 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   }
 
   /**
-   * Iniializes the listbox with all the fonts that support Arabic characters.
+   * Iniializes the listbox with all the fonts that support Arabic characters, from the font
+   * catalog. The fonts that can't display all characters of the selected Arabic version are marked
+   * when they are checked.
    */
   private void initializeArabicFontListBox() {
     final XListBox dlgArabicFontListBox =
         DialogHelper.getListBox(dlgDialog, DIALOG_ARABIC_FONT_LISTBOX_ID);
 
-    final Locale locale = new Locale.Builder().setScript("ARAB").build();
-    final String[] fonts =
-        GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames(locale);
-    for (int i = 0; i < fonts.length; i++) {
-
-      if (new Font(fonts[i], Font.PLAIN, 10).canDisplay(0x0627)) { // If Alif -> Arabic support
-        dlgArabicFontListBox.addItem(fonts[i], (short) i);
-        if (fonts[i].equals(getDefaultArabicFontName())) {
-          dlgArabicFontListBox.selectItemPos((short) i, true);
-        }
-      }
-    }
+    dlgArabicFontListBox.addItems(fontCatalog.getFamilies(FontCatalog.ARABIC), (short) 0);
     dlgArabicFontListBox.selectItem(getDefaultArabicFontName(), true);
-    selectedArabicFontName = dlgArabicFontListBox.getSelectedItem();
+    selectedArabicFontName =
+        InsertQuranTextDialog.getItemFontName(dlgArabicFontListBox.getSelectedItem());
+    markIncompleteArabicFonts();
   }
 
   /**
@@ -763,17 +864,9 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   private void initializeArabicListBox() {
     final XListBox dlgArabicListBox = DialogHelper.getListBox(dlgDialog, DIALOG_ARABIC_LISTBOX_ID);
 
-    final List<String> fns = getQuranTxtFiles();
-
-    int k = 0;
-    for (final String fn : fns) {
-      final String[] parts = fn.split("[.]");
-      if (parts[1].equals(ARABIC)) {
-        dlgArabicListBox.addItem(parts[1] + " (" + parts[2].replace("_", " ") + ")", (short) k++);
-      }
-    }
+    addVersionItems(dlgArabicListBox, catalog.getEntries(ARABIC, true));
     if (dlgArabicListBox.getItemCount() > 0) {
-      dlgArabicListBox.selectItemPos((short) 0, true);
+      selectVersionItem(dlgArabicListBox, ARABIC, settings.get(UserSettings.LAST_ARABIC_VERSION));
       selectedArabicLanguage =
           InsertQuranTextDialog.getItemLanguague(dlgArabicListBox.getSelectedItem());
       selectedArabicVersion =
@@ -809,6 +902,8 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
 
     initializeDialogActions();
 
+    catalog = QuranCatalog.get(dlgContext);
+    fontCatalog = FontCatalog.get(dlgContext);
     initializeSurahListBox();
     initializeAllAyatCheckBox();
     initializeAyatTo();
@@ -825,6 +920,8 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     initializeTranslationFontListBox();
     initializeTranslationFontSize();
     initializeLineByLineCheckBox();
+    initializeTableCheckBox();
+    initializePageBreakCheckBox();
     initializeWriteSurahProgressBar();
    }
 
@@ -853,16 +950,44 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   }
 
   /**
-   * Initializes the listbox with all the surah names of the Qur'an.
+   * Initializes the Page Break checkbox.
+   */
+  private void initializePageBreakCheckBox() {
+    final XCheckBox dlgPageBreakCheckbox =
+        DialogHelper.getCheckBox(dlgDialog, DIALOG_PAGE_BREAK_CHECKBOX_ID);
+    dlgPageBreakCheckbox.setState(InsertQuranTextDialog.boolean2Short(false));
+    selectedPageBreakInd = InsertQuranTextDialog.short2Boolean(dlgPageBreakCheckbox.getState());
+  }
+
+  /**
+   * Initializes the listboxes with all the surah names of the Qur'an.
    */
   private void initializeSurahListBox() {
     final XListBox dlgSurahListBox = DialogHelper.getListBox(dlgDialog, DIALOG_SURAH_LISTBOX_ID);
 
     for (int i = 0; i < 114; i++) {
-      dlgSurahListBox.addItem(QuranReader.getSurahName(i + 1) + " (" + (i + 1) + ")", (short) i);
+      dlgSurahListBox.addItem(InsertionPlan.getSurahHeading(i + 1), (short) i);
     }
     dlgSurahListBox.selectItemPos((short) 0, true);
     selectedSurahNo = dlgSurahListBox.getSelectedItemPos() + 1;
+
+    final XListBox dlgSurahToListBox =
+        DialogHelper.getListBox(dlgDialog, DIALOG_SURAH_TO_LISTBOX_ID);
+    for (int i = 0; i < 114; i++) {
+      dlgSurahToListBox.addItem(InsertionPlan.getSurahHeading(i + 1), (short) i);
+    }
+    dlgSurahToListBox.selectItemPos((short) 0, true);
+    selectedSurahToNo = dlgSurahToListBox.getSelectedItemPos() + 1;
+  }
+
+  /**
+   * Initializes the Table checkbox.
+   */
+  private void initializeTableCheckBox() {
+    final XCheckBox dlgTableCheckbox =
+        DialogHelper.getCheckBox(dlgDialog, DIALOG_TABLE_CHECKBOX_ID);
+    dlgTableCheckbox.setState(InsertQuranTextDialog.boolean2Short(false));
+    selectedTableInd = InsertQuranTextDialog.short2Boolean(dlgTableCheckbox.getState());
   }
 
   /**
@@ -876,21 +1001,14 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   }
 
   /**
-   * Initializes the listbox with all the fonts that support Latin characters.
+   * Initializes the listbox with all the fonts, from the font catalog, as translations can be in
+   * any script.
    */
   private void initializeTranslationFontListBox() {
     final XListBox dlgTranslationFontListBox =
         DialogHelper.getListBox(dlgDialog, DIALOG_TRANSLATION_FONT_LISTBOX_ID);
 
-    final Locale locale = new Locale.Builder().setScript("LATN").build();
-    final String[] fonts =
-        GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames(locale);
-    for (int i = 0; i < fonts.length; i++) {
-      dlgTranslationFontListBox.addItem(fonts[i], (short) i);
-      if (fonts[i].equals(getDefaultTranslationFontName())) {
-        dlgTranslationFontListBox.selectItemPos((short) i, true);
-      }
-    }
+    dlgTranslationFontListBox.addItems(fontCatalog.getFamilies(), (short) 0);
     dlgTranslationFontListBox.selectItem(getDefaultTranslationFontName(), true);
     selectedTranslationFontName = dlgTranslationFontListBox.getSelectedItem();
   }
@@ -913,18 +1031,11 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     final XListBox dlgTranslationListBox =
         DialogHelper.getListBox(dlgDialog, DIALOG_TRANSLATION_LISTBOX_ID);
 
-    final List<String> fns = getQuranTxtFiles();
-
-    int k = 0;
-    for (final String fn : fns) {
-      final String[] parts = fn.split("[.]");
-      if (!parts[1].equals(ARABIC)) {
-        dlgTranslationListBox.addItem(parts[1] + " (" + parts[2].replace("_", " ") + ")",
-            (short) k++);
-      }
-    }
+    addVersionItems(dlgTranslationListBox, catalog.getEntries(ARABIC, false));
     if (dlgTranslationListBox.getItemCount() > 0) {
-      dlgTranslationListBox.selectItemPos((short) 0, true);
+      selectVersionItem(dlgTranslationListBox,
+          settings.get(UserSettings.LAST_TRANSLATION_LANGUAGE),
+          settings.get(UserSettings.LAST_TRANSLATION_VERSION));
       selectedTranslationLanguage =
           InsertQuranTextDialog.getItemLanguague(dlgTranslationListBox.getSelectedItem());
       selectedTranslationVersion =
@@ -950,16 +1061,7 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     final XListBox dlgTransliterationListBox =
         DialogHelper.getListBox(dlgDialog, DIALOG_TRANSLITERATION_LISTBOX_ID);
 
-    final List<String> fns = getQuranTxtFiles();
-
-    int k = 0;
-    for (final String fn : fns) {
-      final String[] parts = fn.split("[.]");
-      if (parts[1].equals(TRANSLITERATION)) {
-        dlgTransliterationListBox.addItem(parts[1] + " (" + parts[2].replace("_", " ") + ")",
-            (short) k++);
-      }
-    }
+    addVersionItems(dlgTransliterationListBox, catalog.getEntries(TRANSLITERATION, true));
     if (dlgTransliterationListBox.getItemCount() > 0) {
       dlgTransliterationListBox.selectItemPos((short) 0, true);
       selectedTransliterationLanguage =
@@ -981,76 +1083,288 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
   }
 
   /**
-   * Show the dialog.
+   * Takes the selections of the dialog for an insertion: the plan of the selected surahs, ayat,
+   * texts, layout and numbering, with the font sizes of the texts. The texts are written in the
+   * order Arabic, translation and transliteration.
+   *
+   * @param firstSurah the first surah number
+   * @param lastSurah the last surah number
+   * @return the insertion
    */
-  public void show() {
-    initializeDialog();
-    dlgDialog.execute();
+  private Insertion createInsertion(final int firstSurah, final int lastSurah) {
+    final InsertionPlan.Builder builder = InsertionPlan.builder().surahs(firstSurah, lastSurah)
+        .numbered(selectedLineNumberInd);
+    final List<Double> fontSizes = new ArrayList<>();
+    if (selectedTableInd) {
+      builder.layout(InsertionPlan.Layout.TABLE);
+    } else if (selectedLineByLineInd) {
+      builder.layout(InsertionPlan.Layout.LINE_BY_LINE);
+    } else {
+      builder.layout(InsertionPlan.Layout.BLOCK);
+    }
+    if (!selectedAllAyatInd) {
+      builder.ayat(selectedAyatFrom, selectedAyatTo);
+    }
+    if (selectedArabicInd) {
+      builder.text(selectedArabicLanguage, selectedArabicVersion, selectedArabicFontName);
+      fontSizes.add(selectedArabicFontSize);
+    }
+    if (selectedTranslationInd) {
+      builder.text(selectedTranslationLanguage, selectedTranslationVersion,
+          selectedTranslationFontName);
+      fontSizes.add(selectedTranslationFontSize);
+    }
+    if (selectedTransliterationInd) {
+      builder.text(selectedTransliterationLanguage, selectedTransliterationVersion,
+          selectedTranslationFontName);
+      fontSizes.add(selectedTranslationFontSize);
+    }
+    return new Insertion(builder.build(),
+        fontSizes.stream().mapToDouble(Double::doubleValue).toArray(), selectedPageBreakInd);
   }
 
   /**
-   * Write Bismillah lines.
+   * Creates or updates the paragraph style for the surah headings, in the document or in a
+   * fragment.
    *
-   * @param text the text
-   * @param paragraphCursor the paragraph
+   * @param insertion the insertion
+   * @param textDoc the document or null
+   * @param fragment the fragment or null
+   */
+  private void defineHeadingStyle(final Insertion insertion, final XTextDocument textDoc,
+      final FlatOdfFragment fragment) {
+    if (textDoc != null) {
+      DocumentHelper.setParagraphStyle(textDoc, InsertionPlan.STYLE_HEADING,
+          new String[] {"BreakType", "CharWeight", "CharWeightComplex", "ParaAdjust"},
+          new Object[] {
+              insertion.pageBreak ? com.sun.star.style.BreakType.PAGE_BEFORE
+                  : com.sun.star.style.BreakType.NONE,
+              com.sun.star.awt.FontWeight.BOLD, com.sun.star.awt.FontWeight.BOLD,
+              com.sun.star.style.ParagraphAdjust.CENTER});
+    }
+    if (fragment != null) {
+      fragment.addHeadingStyle(InsertionPlan.STYLE_HEADING, insertion.pageBreak);
+    }
+  }
+
+  /**
+   * Creates or updates the paragraph style for the text of a language, in the document or in a
+   * fragment.
+   *
+   * @param textDoc the document or null
+   * @param fragment the fragment or null
+   * @param language the language
+   * @param fontName the font
+   * @param fontSize the font size
+   */
+  private void defineParagraphStyle(final XTextDocument textDoc, final FlatOdfFragment fragment,
+      final String language, final String fontName, final double fontSize) {
+    final boolean rightToLeft = InsertionPlan.isRightToLeft(language);
+    final String styleName = InsertionPlan.getParagraphStyleName(language);
+
+    if (textDoc != null) {
+      DocumentHelper.setParagraphStyle(textDoc, styleName,
+          new String[] {"ParaAdjust", "WritingMode",
+              rightToLeft ? "CharFontNameComplex" : "CharFontName",
+              rightToLeft ? "CharHeightComplex" : "CharHeight"},
+          new Object[] {
+              rightToLeft ? com.sun.star.style.ParagraphAdjust.RIGHT
+                  : com.sun.star.style.ParagraphAdjust.LEFT,
+              rightToLeft ? com.sun.star.text.WritingMode2.RL_TB
+                  : com.sun.star.text.WritingMode2.LR_TB,
+              fontName, (float) fontSize});
+    }
+    if (fragment != null) {
+      fragment.addParagraphStyle(styleName, rightToLeft, fontName, fontSize);
+    }
+  }
+
+  /**
+   * Creates or updates the paragraph styles of the texts of an insertion, so every paragraph only
+   * needs its style name.
+   *
+   * @param insertion the insertion
+   * @param textDoc the document or null
+   * @param fragment the fragment or null
+   */
+  private void defineParagraphStyles(final Insertion insertion, final XTextDocument textDoc,
+      final FlatOdfFragment fragment) {
+    final List<InsertionPlan.Text> texts = insertion.plan.getTexts();
+    for (int i = 0; i < texts.size(); i++) {
+      defineParagraphStyle(textDoc, fragment, texts.get(i).getLanguage(),
+          texts.get(i).getFontName(), insertion.fontSizes[i]);
+    }
+  }
+
+  /**
+   * Reads the surahs of the plan in all its text versions at the same time and waits until all of
+   * them are read. A version that can't be read is reported.
+   *
+   * @param plan the plan
+   * @return true if all versions can be used
    */
-  private void writeBismillahSurahLineByLIne(final XText text,
-      final XParagraphCursor paragraphCursor) {
+  private boolean loadSelectedVersions(final InsertionPlan plan) {
+    final List<CompletableFuture<QuranReader>> readers = new ArrayList<>();
+    for (final InsertionPlan.Text text : plan.getTexts()) {
+      readers.add(QuranReaderCache.getSurahsAsync(text.getLanguage(), text.getVersion(),
+          plan.getFirstSurah(), plan.getLastSurah(), dlgContext));
+    }
+
+    boolean loaded = true;
+    for (int i = 0; i < readers.size(); i++) {
+      final InsertionPlan.Text text = plan.getTexts().get(i);
+      loaded &= waitForVersion(readers.get(i), text.getLanguage(), text.getVersion());
+    }
+    return loaded;
+  }
+
+  /**
+   * Checks in the background which Arabic fonts can display all characters of the selected Arabic
+   * version, and then marks the other fonts in the listbox on the dialog's thread. The marks are
+   * left alone if another version was selected in the meantime.
+   */
+  private void markIncompleteArabicFonts() {
+    final String language = selectedArabicLanguage;
+    final String version = selectedArabicVersion;
+    if (fontCatalog == null || version.isEmpty()) {
+      return;
+    }
+    final String[] families = fontCatalog.getFamilies(FontCatalog.ARABIC);
+    QuranReaderCache.getReaderAsync(language, version, dlgContext)
+        .thenCompose(reader -> GlyphCoverage.analyze(language, version, reader, families))
+        .thenAccept(results -> DialogHelper.runOnMainThread(dlgContext, () -> {
+          // on the dialog's thread, so the selection can't change while the items are replaced
+          if (language.equals(selectedArabicLanguage) && version.equals(selectedArabicVersion)) {
+            setArabicFontItems(results.values());
+          }
+        })).exceptionally(e -> {
+          e.printStackTrace();
+          return null;
+        });
+  }
+
+  /**
+   * Renders the batches of the plan into paragraphs, for the writer to take. Runs on its own
+   * thread and ends with {@link #END_OF_BATCHES}, or {@link #FAILED_BATCHES} on a failure, that is
+   * kept in {@link #preparationFailure} for the writer to throw. Only the
+   * ayat of one batch are read at a time, so the memory used doesn't depend on the number of
+   * surahs.
+   *
+   * @param plan the plan
+   * @param batches the queue for the batches
+   */
+  private void prepareBatches(final InsertionPlan plan,
+      final BlockingQueue<List<Paragraph>> batches) {
     try {
-      if (selectedArabicInd) {
-        writeParagraph(text, paragraphCursor,
-            getBismillah(selectedArabicLanguage, selectedArabicVersion), selectedArabicLanguage,
-            selectedArabicFontName, selectedArabicFontSize);
-      }
-      if (selectedTranslationInd) {
-        writeParagraph(text, paragraphCursor,
-            getBismillah(selectedTranslationLanguage, selectedTranslationVersion),
-            selectedTranslationLanguage, selectedTranslationFontName, selectedTranslationFontSize);
-      }
-      if (selectedTransliterationInd) {
-        writeParagraph(text, paragraphCursor,
-            getBismillah(selectedTransliterationLanguage, selectedTransliterationVersion),
-            selectedTranslationLanguage, selectedTranslationFontName, selectedTranslationFontSize);
+      try {
+        final InsertionPlan.AyatSource source = QuranReaderCache.getAyatSource(dlgContext);
+        for (final InsertionPlan.Batch batch : plan.getBatches()) {
+          batches.put(plan.render(batch, source));
+        }
+        batches.put(END_OF_BATCHES);
+      } catch (final RuntimeException e) {
+        e.printStackTrace();
+        preparationFailure = e;
+        batches.put(FAILED_BATCHES);
       }
-    } catch (com.sun.star.lang.IllegalArgumentException | UnknownPropertyException
-        | PropertyVetoException | WrappedTargetException e) {
-      e.printStackTrace();
+    } catch (final InterruptedException e) {
+      // the writer has stopped
     }
   }
 
-  private void writeParagraph(final XText text, final XParagraphCursor paragraphCursor,
-      final String paragraph, final String language, final String fontName, final double fontSize)
-      throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+  /**
+   * Remembers the used versions in the user profile, so they are selected and can be preloaded
+   * next time.
+   */
+  private void saveSelectedVersions() {
+    if (selectedArabicInd) {
+      settings.set(UserSettings.LAST_ARABIC_VERSION, selectedArabicVersion);
+    }
+    if (selectedTranslationInd) {
+      settings.set(UserSettings.LAST_TRANSLATION_LANGUAGE, selectedTranslationLanguage);
+      settings.set(UserSettings.LAST_TRANSLATION_VERSION, selectedTranslationVersion);
+    }
+    settings.save();
+  }
 
-    paragraphCursor.gotoEndOfParagraph(false);
-    text.insertControlCharacter(paragraphCursor, ControlCharacter.PARAGRAPH_BREAK, false);
+  /**
+   * Replaces the items of the Arabic font listbox, with the fonts that can't display the selected
+   * Arabic version marked, and keeps the selected font.
+   *
+   * @param results the coverage of the fonts, in the order of the listbox
+   */
+  private void setArabicFontItems(final Collection<GlyphCoverage.Result> results) {
+    final XListBox dlgArabicFontListBox =
+        DialogHelper.getListBox(dlgDialog, DIALOG_ARABIC_FONT_LISTBOX_ID);
 
-    final XPropertySet paragraphCursorPropertySet = DocumentHelper.getPropertySet(paragraphCursor);
+    final String[] items = new String[results.size()];
+    String selectedItem = selectedArabicFontName;
+    int i = 0;
+    for (final GlyphCoverage.Result result : results) {
+      items[i] = result.isComplete() ? result.getFamily()
+          : result.getFamily() + INCOMPLETE_FONT_SUFFIX;
+      if (result.getFamily().equals(selectedArabicFontName)) {
+        selectedItem = items[i];
+      }
+      i++;
+    }
+    dlgArabicFontListBox.removeItems((short) 0, dlgArabicFontListBox.getItemCount());
+    dlgArabicFontListBox.addItems(items, (short) 0);
+    dlgArabicFontListBox.selectItem(selectedItem, true);
+  }
 
-    if (getLanguageWritingMode(language) == com.sun.star.text.WritingMode2.LR_TB) {
-      paragraphCursorPropertySet.setPropertyValue("ParaAdjust",
-          com.sun.star.style.ParagraphAdjust.LEFT);
-      paragraphCursorPropertySet.setPropertyValue("WritingMode",
-          com.sun.star.text.WritingMode2.LR_TB);
-      paragraphCursorPropertySet.setPropertyValue("CharFontName", fontName);
-      paragraphCursorPropertySet.setPropertyValue("CharHeight", fontSize);
-    } else {
-      paragraphCursorPropertySet.setPropertyValue("ParaAdjust",
-          com.sun.star.style.ParagraphAdjust.RIGHT);
-      paragraphCursorPropertySet.setPropertyValue("WritingMode",
-          com.sun.star.text.WritingMode2.RL_TB);
-      paragraphCursorPropertySet.setPropertyValue("CharFontNameComplex", fontName);
-      paragraphCursorPropertySet.setPropertyValue("CharHeightComplex", fontSize);
+  /**
+   * Show the dialog.
+   */
+  public void show() {
+    initializeDialog();
+    dlgDialog.execute();
+    // the dialog is closed, a surah that is still being written stops after the current batch
+    cancelRequested.set(true);
+    if (inserted) {
+      saveSelectedVersions();
+    }
+  }
+
+  /**
+   * Waits until a text version is read and reports it if it can't be read.
+   *
+   * @param reader the reader, when it is ready
+   * @param language the language of the version
+   * @param version the version
+   * @return true if the version can be used
+   */
+  private boolean waitForVersion(final CompletableFuture<QuranReader> reader,
+      final String language, final String version) {
+    String message = "Can't read the Qur'an text " + language + " (" + version.replace("_", " ")
+        + ")";
+    try {
+      if (reader.join().isLoaded()) {
+        return true;
+      }
+    } catch (final CompletionException e) {
+      e.printStackTrace();
+      message = message + ": " + e.getCause();
     }
-    text.insertString(paragraphCursor, paragraph, false);
+    DialogHelper.showErrorMessage(dlgContext, dlgDialog, message);
+    return false;
   }
 
   /**
-   * Write the selected surah text.
+   * Write the surahs of an insertion, as planned by its {@link InsertionPlan}. In the table layout
+   * every surah is written as a table, in the other layouts the paragraphs are rendered on another
+   * thread and written in batches, until all are written or the insertion is cancelled. When more
+   * than one surah is written, each starts with a heading.
    *
-   * @param surahNumber the surah number
+   * @param insertion the insertion
+   * @return true if the surahs are written completely
    */
-  public void writeSurah(final int surahNumber) {
+  private boolean writeSurahs(final Insertion insertion) {
+    final InsertionPlan plan = insertion.plan;
+    if (!loadSelectedVersions(plan)) {
+      return false;
+    }
+
     final XTextDocument textDoc = DocumentHelper.getCurrentDocument(dlgContext);
     final XController controller = textDoc.getCurrentController();
     final XTextViewCursorSupplier textViewCursorSupplier =
@@ -1060,146 +1374,162 @@ public class InsertQuranTextDialog implements XDialogEventHandler {
     final XTextCursor textCursor = text.createTextCursorByRange(textViewCursor.getStart());
     final XParagraphCursor paragraphCursor =
         UnoRuntime.queryInterface(XParagraphCursor.class, textCursor);
-    final XPropertySet paragraphCursorPropertySet = DocumentHelper.getPropertySet(paragraphCursor);
 
+    final ProgressReporter progress = new ProgressReporter(
+        DialogHelper.getProgressBar(dlgDialog, DIALOG_WRITE_SURAH_PROGRESSBAR),
+        plan.getAyatCount());
+
+    // no layout and repaint until the whole passage is inserted, and one undo step for all of it
+    final XModel model = DocumentHelper.getModel(textDoc);
+    final XUndoManager undoManager = DocumentHelper.getUndoManager(textDoc);
+    model.lockControllers();
+    if (undoManager != null) {
+      undoManager.enterUndoContext(UNDO_TITLE);
+    }
+    boolean completed = false;
+    boolean emptyParagraph = false;
     try {
-      paragraphCursorPropertySet.setPropertyValue("CharFontName", selectedTranslationFontName);
-      paragraphCursorPropertySet.setPropertyValue("CharFontNameComplex", selectedArabicFontName);
-      paragraphCursorPropertySet.setPropertyValue("CharHeight", selectedTranslationFontSize);
-      paragraphCursorPropertySet.setPropertyValue("CharHeightComplex", selectedArabicFontSize);
+      defineParagraphStyles(insertion, textDoc, null);
+      if (plan.hasHeadings()) {
+        defineHeadingStyle(insertion, textDoc, null);
+      }
 
-      final long from = (selectedAllAyatInd) ? 1 : selectedAyatFrom;
-      final long to =
-          (selectedAllAyatInd) ? QuranReader.getSurahSize(surahNumber) + 1 : selectedAyatTo + 1;
+      // the passage is written between the paragraph of the cursor and a new empty paragraph,
+      // that keeps its place while the passage is inserted before it
+      paragraphCursor.gotoEndOfParagraph(false);
+      text.insertControlCharacter(paragraphCursor, ControlCharacter.PARAGRAPH_BREAK, false);
 
-      if (selectedLineByLineInd) {
-        writeSurahLineByLine(surahNumber, text, paragraphCursor, from, to);
+      if (plan.getLayout() == InsertionPlan.Layout.TABLE) {
+        // the tables are written before the empty paragraph, it stays after the last one
+        completed = writeSurahsAsTables(textDoc, paragraphCursor, plan, progress);
       } else {
-        writeSurahAsOneBlock(surahNumber, text, paragraphCursor, from, to);
+        emptyParagraph = true;
+        completed = writeSurahsInBatches(insertion, text, paragraphCursor, progress);
       }
-
-      paragraphCursorPropertySet.setPropertyValue("CharFontName", selectedTranslationFontName);
-      paragraphCursorPropertySet.setPropertyValue("CharFontNameComplex", selectedArabicFontName);
-      paragraphCursorPropertySet.setPropertyValue("CharHeight", selectedTranslationFontSize);
-      paragraphCursorPropertySet.setPropertyValue("CharHeightComplex", selectedArabicFontSize);
-
     } catch (com.sun.star.lang.IllegalArgumentException | UnknownPropertyException
         | PropertyVetoException | WrappedTargetException e) {
       e.printStackTrace();
+    } catch (final UncheckedIOException e) {
+      // a surah of a text version can't be read
+      DialogHelper.showErrorMessage(dlgContext, dlgDialog,
+          "Can't read the Qur'an text: " + e.getCause().getMessage());
+    } finally {
+      try {
+        if (emptyParagraph) {
+          // remove the empty paragraph after the passage, also when it is incomplete
+          paragraphCursor.goLeft((short) 1, true);
+          paragraphCursor.setString("");
+        }
+      } finally {
+        if (undoManager != null) {
+          try {
+            undoManager.leaveUndoContext();
+          } catch (final InvalidStateException e) {
+            e.printStackTrace();
+          }
+        }
+        model.unlockControllers();
+      }
     }
+    return completed;
   }
 
   /**
-   * Write the selected Surah as one block.
-   *
-   * @param surahNumber the surah number
-   * @param text the text
-   * @param paragraphCursor the paragraph
-   * @param from start ayat
-   * @param to last ayat
-   */
-  private void writeSurahAsOneBlock(final int surahNumber, final XText text,
-      final XParagraphCursor paragraphCursor, final long from, final long to) {
-    final XProgressBar dlgWriteSurahProgressBar =
-        DialogHelper.getProgressBar(dlgDialog, DIALOG_WRITE_SURAH_PROGRESSBAR);
-    if (selectedArabicInd) {
-      writeSurahTextBlock(surahNumber, text, paragraphCursor, from, to, selectedArabicLanguage,
-          selectedArabicVersion, selectedArabicFontName, selectedArabicFontSize,
-          dlgWriteSurahProgressBar);
-    }
-    if (selectedTranslationInd) {
-      writeSurahTextBlock(surahNumber, text, paragraphCursor, from, to, selectedTranslationLanguage,
-          selectedTranslationVersion, selectedTranslationFontName, selectedTranslationFontSize,
-          dlgWriteSurahProgressBar);
-    }
-    if (selectedTransliterationInd) {
-      writeSurahTextBlock(surahNumber, text, paragraphCursor, from, to,
-          selectedTransliterationLanguage, selectedTransliterationVersion,
-          selectedTranslationFontName, selectedArabicFontSize, dlgWriteSurahProgressBar);
-    }
-  }
-
-  /**
-   * Write the selected Surah Line By Line.
+   * Write the selected texts of every surah as a table, a column per text and a row per ayah. The
+   * cells of a table are filled with one call. When more than one surah is written, the heading of
+   * the surah is written before its table.
    *
-   * @param surahNumber the surah number
-   * @param text the text
-   * @param paragraphCursor the paragraph of the text
-   * @param from start ayat
-   * @param to last ayat
+   * @param textDoc the document
+   * @param paragraphCursor the cursor at the start of the paragraph to write before
+   * @param plan the plan, with a batch per surah
+   * @param progress the progress reporter
+   * @return true if the tables are written
    */
-  private void writeSurahLineByLine(final int surahNumber, final XText text,
-      final XParagraphCursor paragraphCursor, final long from, final long to) {
-    try {
-
-      final XProgressBar dlgWriteSurahProgressBar =
-          DialogHelper.getProgressBar(dlgDialog, DIALOG_WRITE_SURAH_PROGRESSBAR);
-      if ((from == 1) && (surahNumber != 1 && surahNumber != 9)) {
-        writeBismillahSurahLineByLIne(text, paragraphCursor);
+  private boolean writeSurahsAsTables(final XTextDocument textDoc,
+      final XParagraphCursor paragraphCursor, final InsertionPlan plan,
+      final ProgressReporter progress)
+      throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+    final XText text = paragraphCursor.getText();
+    final DocumentHelper.PropertyBatch cursorProperties =
+        new DocumentHelper.PropertyBatch(paragraphCursor).read("ParaStyleName");
+    final Object paragraphStyleName = cursorProperties.get("ParaStyleName");
+    final InsertionPlan.AyatSource source = QuranReaderCache.getAyatSource(dlgContext);
+    final String[] columnStyles = plan.getColumnStyles();
+
+    for (final InsertionPlan.Batch batch : plan.getBatches()) {
+      if (cancelRequested.get()) {
+        progress.finish();
+        return false;
       }
-
-      for (long l = from; l < to; l++) {
-        dlgWriteSurahProgressBar.setValue((int) (100 * l / (to - from + 1)));
-        if (selectedArabicInd) {
-          writeParagraph(text, paragraphCursor,
-              getAyahLine(surahNumber, l, selectedArabicLanguage, selectedArabicVersion,
-                  selectedArabicFontName),
-              selectedArabicLanguage, selectedArabicFontName, selectedArabicFontSize);
-        }
-        if (selectedTranslationInd) {
-          writeParagraph(text, paragraphCursor,
-              getAyahLine(surahNumber, l, selectedTranslationLanguage, selectedTranslationVersion,
-                  selectedTranslationFontName),
-              selectedTranslationLanguage, selectedTranslationFontName,
-              selectedTranslationFontSize);
-        }
-        if (selectedTransliterationInd) {
-          writeParagraph(text, paragraphCursor,
-              getAyahLine(surahNumber, l, selectedTransliterationLanguage,
-                  selectedTransliterationVersion, selectedTranslationFontName),
-              selectedTransliterationLanguage, selectedTranslationFontName,
-              selectedTranslationFontSize);
+      final Object[][] data = plan.renderTable(batch, source);
+
+      if (batch.hasHeading()) {
+        // the heading takes the empty paragraph, the table goes before a new one
+        cursorProperties.set("ParaStyleName", InsertionPlan.STYLE_HEADING).apply();
+        text.insertString(paragraphCursor,
+            InsertionPlan.getSurahHeading(batch.getSurahNumber()), false);
+        paragraphCursor.gotoEndOfParagraph(false);
+        text.insertControlCharacter(paragraphCursor, ControlCharacter.PARAGRAPH_BREAK, false);
+        if (paragraphStyleName != null) {
+          cursorProperties.set("ParaStyleName", paragraphStyleName).apply();
         }
       }
-    } catch (com.sun.star.lang.IllegalArgumentException | UnknownPropertyException
-        | PropertyVetoException | WrappedTargetException e) {
-      e.printStackTrace();
+      if (!DocumentHelper.insertTable(textDoc, paragraphCursor, data, columnStyles)) {
+        return false;
+      }
+      progress.add((batch.getTo() - batch.getFrom()) * columnStyles.length);
     }
+    progress.finish();
+    return true;
   }
 
   /**
-   * Write the Text block.
+   * Write the texts of the surahs in batches of paragraphs, prepared on another thread.
    *
-   * @param surahNumber the surah number
+   * @param insertion the insertion
    * @param text the text
-   * @param paragraphCursor the paragraph
-   * @param from start ayat
-   * @param to last ayat
-   * @param language the language of the text
-   * @param languageVersion the text version for the language
-   * @param dlgWriteSurahProgressBar the progressBar
-   */
-  private void writeSurahTextBlock(final int surahNumber, final XText text,
-      final XParagraphCursor paragraphCursor, final long from, final long to, final String language,
-      final String languageVersion, final String fontName, final double fontSize,
-      final XProgressBar dlgWriteSurahProgressBar) {
+   * @param paragraphCursor the cursor at the start of the paragraph to write before
+   * @param progress the progress reporter
+   * @return true if all batches are written
+   */
+  private boolean writeSurahsInBatches(final Insertion insertion, final XText text,
+      final XParagraphCursor paragraphCursor, final ProgressReporter progress)
+      throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+    final InsertionPlan plan = insertion.plan;
+    final BlockingQueue<List<Paragraph>> batches = new ArrayBlockingQueue<>(BATCH_QUEUE_SIZE);
+    final Thread preparer = new Thread(() -> prepareBatches(plan, batches), "QuranLO preparer");
+    preparer.setDaemon(true);
+    preparer.start();
+
+    boolean completed = false;
     try {
-      final StringBuilder lb = new StringBuilder();
-      for (long l = from; l < to; l++) {
-        if ((l == 1) && (surahNumber != 1 && surahNumber != 9)) {
-          lb.append(getBismillah(language, languageVersion));
-          lb.append("\n");
+      final PassageWriter passage = new PassageWriter(dlgContext, text, paragraphCursor,
+          fragment -> {
+            defineParagraphStyles(insertion, null, fragment);
+            if (plan.hasHeadings()) {
+              defineHeadingStyle(insertion, null, fragment);
+            }
+          });
+      while (!cancelRequested.get()) {
+        final List<Paragraph> batch = batches.take();
+        if (batch == END_OF_BATCHES) {
+          completed = true;
+          break;
+        }
+        if (batch == FAILED_BATCHES) {
+          throw preparationFailure;
+        }
+        passage.write(batch);
+        for (final Paragraph paragraph : batch) {
+          progress.add(paragraph.getAyat());
         }
-        dlgWriteSurahProgressBar.setValue((int) (100 * l / (to - from + 1)));
-        lb.append(getAyahLine(surahNumber, l, language, languageVersion, fontName));
-        lb.append(" ");
       }
-      writeParagraph(text, paragraphCursor, lb.toString() + "\n", language, fontName, fontSize);
-    } catch (com.sun.star.lang.IllegalArgumentException | UnknownPropertyException
-        | PropertyVetoException | WrappedTargetException e) {
-      e.printStackTrace();
+      progress.finish();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      preparer.interrupt();
     }
+    return completed;
   }
-
-
 }
@@ -0,0 +1,74 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ayah store that keeps all the ayat in one flat array on the heap.
+ *
+ * @author abdullah
+ *
+ */
+final class ArrayAyahStore extends AyahStore {
+
+  private final String[] ayat = new String[getAyatCount()];
+
+  @Override
+  String get(final int index) {
+    return ayat[index];
+  }
+
+  @Override
+  List<String> getRange(final int fromIndex, final int toIndex) {
+    return Collections.unmodifiableList(Arrays.asList(ayat).subList(fromIndex, toIndex));
+  }
+
+  /**
+   * Returns true if every ayah of the Qur'an has been stored.
+   *
+   * @return true if complete
+   */
+  boolean isComplete() {
+    for (final String aya : ayat) {
+      if (aya == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Store an ayah.
+   *
+   * @param surano the surah
+   * @param ayano the ayah
+   * @param text the text of the ayah
+   * @return false if the surah or ayah does not exist
+   */
+  boolean put(final int surano, final long ayano, final String text) {
+    final int index = indexOf(surano, ayano);
+    if (index < 0) {
+      return false;
+    }
+    ayat[index] = text;
+    return true;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ayah numbers written in the digits of a script, with the markers around them.
+ *
+ * <p>
+ * The numbers and markers of all ayat, 1 to {@link #MAX_AYAH}, are rendered once per digit base
+ * and then only looked up, so numbering the ayat while writing allocates nothing. Larger numbers
+ * are rendered when asked for.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class AyahNumerals {
+
+  public static final int BASE_ARABIC_INDIC = 0x0660;
+  public static final int BASE_ASCII = 0x0030;
+  public static final int BASE_BENGALI = 0x09E6;
+  public static final int BASE_DEVANAGARI = 0x0966;
+  public static final int BASE_EXTENDED_ARABIC_INDIC = 0x06F0;
+  public static final int MAX_AYAH = 286;
+
+  private static final Map<Integer, AyahNumerals> INSTANCES = new ConcurrentHashMap<>();
+  private static final char LEFT_PARENTHESIS = '\uFD3E';
+  private static final char RIGHT_PARENTHESIS = '\uFD3F';
+
+  /**
+   * Returns the numerals of a digit base.
+   *
+   * @param base the codepoint of the digit zero
+   * @return the numerals
+   */
+  public static AyahNumerals forBase(final int base) {
+    return INSTANCES.computeIfAbsent(base, AyahNumerals::new);
+  }
+
+  /**
+   * Renders a number in the digits of a base.
+   *
+   * @param n the number
+   * @param base the codepoint of the digit zero
+   * @return the number
+   */
+  private static String render(final long n, final int base) {
+    final char[] digits = new char[20];
+    int pos = digits.length;
+    long rest = n;
+    do {
+      digits[--pos] = (char) (base + (int) (rest % 10));
+      rest = rest / 10;
+    } while (rest > 0);
+    return new String(digits, pos, digits.length - pos);
+  }
+
+  /**
+   * Renders the marker of a number: after the ayah between ornate parentheses in right to left
+   * text, before it between parentheses otherwise.
+   *
+   * @param number the number in digits
+   * @param rightToLeft true for right to left text
+   * @return the marker
+   */
+  private static String renderMarker(final String number, final boolean rightToLeft) {
+    return rightToLeft ? " " + RIGHT_PARENTHESIS + number + LEFT_PARENTHESIS + " "
+        : "(" + number + ") ";
+  }
+
+  private final int base;
+  private final String[] leftToRightMarkers = new String[MAX_AYAH + 1];
+  private final String[] numbers = new String[MAX_AYAH + 1];
+  private final String[] rightToLeftMarkers = new String[MAX_AYAH + 1];
+
+  private AyahNumerals(final int base) {
+    this.base = base;
+    for (int n = 0; n <= MAX_AYAH; n++) {
+      numbers[n] = render(n, base);
+      leftToRightMarkers[n] = renderMarker(numbers[n], false);
+      rightToLeftMarkers[n] = renderMarker(numbers[n], true);
+    }
+  }
+
+  /**
+   * Returns the codepoint of the digit zero.
+   *
+   * @return the base
+   */
+  public int getBase() {
+    return base;
+  }
+
+  /**
+   * Returns the marker of an ayah number, to write after the ayah in right to left text and
+   * before it otherwise.
+   *
+   * @param n the ayah number
+   * @param rightToLeft true for right to left text
+   * @return the marker
+   */
+  public String getMarker(final long n, final boolean rightToLeft) {
+    if (n >= 0 && n <= MAX_AYAH) {
+      return rightToLeft ? rightToLeftMarkers[(int) n] : leftToRightMarkers[(int) n];
+    }
+    return renderMarker(render(n, base), rightToLeft);
+  }
+
+  /**
+   * Returns a number in the digits of the base.
+   *
+   * @param n the number, not negative
+   * @return the number
+   */
+  public String getNumber(final long n) {
+    if (n >= 0 && n <= MAX_AYAH) {
+      return numbers[(int) n];
+    }
+    return render(n, base);
+  }
+}
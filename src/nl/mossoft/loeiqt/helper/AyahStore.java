@@ -0,0 +1,185 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Store of all the ayat of one Qur'an text version.
+ *
+ * <p>
+ * The ayat are kept in mushaf order. A prefix-sum table of the surah sizes gives the index of the
+ * first ayah of every surah, so a lookup is a bounds check plus an index.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+abstract class AyahStore {
+
+  static final int SURAH_COUNT = 114;
+
+  private static final int[] SURAH_START = new int[SURAH_COUNT + 1];
+
+  static {
+    for (int s = 1; s <= SURAH_COUNT; s++) {
+      SURAH_START[s] = SURAH_START[s - 1] + (int) QuranReader.getSurahSize(s);
+    }
+  }
+
+  /**
+   * Returns the total number of ayat in the Qur'an.
+   *
+   * @return number of ayat
+   */
+  static int getAyatCount() {
+    return SURAH_START[SURAH_COUNT];
+  }
+
+  /**
+   * Returns the index of the first ayah of a surah.
+   *
+   * @param surano the surah, 1 to 114, or 115 for the end of the Qur'an
+   * @return the index
+   */
+  static int getSurahStart(final int surano) {
+    return SURAH_START[surano - 1];
+  }
+
+  /**
+   * Returns the surah an index belongs to.
+   *
+   * @param index the index, 0 to getAyatCount() - 1
+   * @return the surah
+   */
+  static int getSurahOf(final int index) {
+    final int pos = Arrays.binarySearch(SURAH_START, index);
+    // an exact match is the first ayah of the next surah, otherwise use the insertion point
+    return pos >= 0 ? pos + 1 : -pos - 1;
+  }
+
+  /**
+   * Returns the index in the store of an ayah, or -1 if the surah or ayah does not exist.
+   *
+   * @param surano the surah
+   * @param ayano the ayah
+   * @return the index
+   */
+  static int indexOf(final int surano, final long ayano) {
+    if (surano < 1 || surano > SURAH_COUNT || ayano < 1
+        || ayano > SURAH_START[surano] - SURAH_START[surano - 1]) {
+      return -1;
+    }
+    return SURAH_START[surano - 1] + (int) ayano - 1;
+  }
+
+  /**
+   * Get an ayah by its index.
+   *
+   * @param index the index, 0 to getAyatCount() - 1
+   * @return the ayah
+   */
+  abstract String get(int index);
+
+  /**
+   * Collects the distinct characters of all the ayat.
+   *
+   * @return the code points
+   */
+  BitSet getCodePoints() {
+    final BitSet used = new BitSet(0x10000);
+    for (int index = 0; index < getAyatCount(); index++) {
+      get(index).codePoints().forEach(used::set);
+    }
+    return used;
+  }
+
+  /**
+   * Returns a read-only view of a range of ayat. The view reads from the store, nothing is copied.
+   *
+   * @param fromIndex index of the first ayah
+   * @param toIndex index after the last ayah
+   * @return the ayat
+   */
+  List<String> getRange(final int fromIndex, final int toIndex) {
+    return new AbstractRangeList(toIndex - fromIndex) {
+      @Override
+      public String get(final int index) {
+        return AyahStore.this.get(fromIndex + checkIndex(index));
+      }
+    };
+  }
+
+  /**
+   * Brings the ayat of a surah into memory, so a later request doesn't wait for them. This reads
+   * every ayah of the surah once.
+   *
+   * @param surano the surah
+   */
+  void load(final int surano) {
+    for (int index = getSurahStart(surano); index < getSurahStart(surano + 1); index++) {
+      get(index);
+    }
+  }
+
+  /**
+   * Random access list of a fixed size, used for the views on a store.
+   */
+  abstract static class AbstractRangeList extends AbstractList<String> implements RandomAccess {
+
+    private final int size;
+
+    AbstractRangeList(final int size) {
+      this.size = size;
+    }
+
+    /**
+     * Checks that an index is inside the list.
+     *
+     * @param index the index
+     * @return the index
+     */
+    final int checkIndex(final int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return index;
+    }
+
+    @Override
+    public final int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Get an ayah.
+   *
+   * @param surano the surah
+   * @param ayano the ayah
+   * @return the ayah or null if it does not exist
+   */
+  final String get(final int surano, final long ayano) {
+    final int index = indexOf(surano, ayano);
+    return index < 0 ? null : get(index);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of texts stored in one byte per character.
+ *
+ * <p>
+ * A Qur'an text uses only a few dozen different characters, but Arabic and Urdu characters take two
+ * bytes in a String. The code page of the texts is derived when they are encoded: the 255 most
+ * used characters get a one byte code, any other character is stored as an escape byte followed by
+ * its two bytes. The texts are decoded to a String only when they are requested.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+final class CompactText {
+
+  private static final int ESCAPE = 0xFF;
+
+  /**
+   * Encodes texts. A null text is encoded as an empty text.
+   *
+   * @param texts the texts
+   * @return the encoded texts
+   */
+  static CompactText encode(final String[] texts) {
+    final Map<Character, int[]> counts = new HashMap<>();
+    int length = 0;
+    for (final String text : texts) {
+      if (text == null) {
+        continue;
+      }
+      for (int i = 0; i < text.length(); i++) {
+        counts.computeIfAbsent(text.charAt(i), c -> new int[1])[0]++;
+      }
+      length += text.length();
+    }
+
+    final List<Character> chars = new ArrayList<>(counts.keySet());
+    chars.sort((c1, c2) -> Integer.compare(counts.get(c2)[0], counts.get(c1)[0]));
+    final char[] codePage = new char[Math.min(ESCAPE, chars.size())];
+    final Map<Character, Integer> codes = new HashMap<>();
+    for (int code = 0; code < codePage.length; code++) {
+      codePage[code] = chars.get(code);
+      codes.put(codePage[code], code);
+    }
+
+    int escaped = 0;
+    for (int code = codePage.length; code < chars.size(); code++) {
+      escaped += counts.get(chars.get(code))[0];
+    }
+
+    final byte[] data = new byte[length + 2 * escaped];
+    final int[] offsets = new int[texts.length + 1];
+    int pos = 0;
+    for (int t = 0; t < texts.length; t++) {
+      final String text = texts[t] == null ? "" : texts[t];
+      for (int i = 0; i < text.length(); i++) {
+        final char c = text.charAt(i);
+        final Integer code = codes.get(c);
+        if (code != null) {
+          data[pos++] = (byte) code.intValue();
+        } else {
+          data[pos++] = (byte) ESCAPE;
+          data[pos++] = (byte) (c >> 8);
+          data[pos++] = (byte) c;
+        }
+      }
+      offsets[t + 1] = pos;
+    }
+    return new CompactText(codePage, data, offsets);
+  }
+
+  private final char[] codePage;
+  private final byte[] data;
+  private final int[] offsets;
+
+  private CompactText(final char[] codePage, final byte[] data, final int[] offsets) {
+    this.codePage = codePage;
+    this.data = data;
+    this.offsets = offsets;
+  }
+
+  /**
+   * Decodes one of the texts.
+   *
+   * @param index the index of the text
+   * @return the text
+   */
+  String get(final int index) {
+    final int from = offsets[index];
+    final int to = offsets[index + 1];
+    final char[] chars = new char[to - from];
+    int length = 0;
+    for (int pos = from; pos < to; pos++) {
+      final int code = data[pos] & 0xFF;
+      if (code == ESCAPE) {
+        chars[length++] = (char) ((data[pos + 1] & 0xFF) << 8 | data[pos + 2] & 0xFF);
+        pos += 2;
+      } else {
+        chars[length++] = codePage[code];
+      }
+    }
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Returns the number of texts.
+   *
+   * @return the number of texts
+   */
+  int size() {
+    return offsets.length - 1;
+  }
+}
@@ -20,6 +20,7 @@ package nl.mossoft.loeiqt.helper;
 import com.sun.star.awt.MessageBoxType;
 import com.sun.star.awt.Point;
 import com.sun.star.awt.XButton;
+import com.sun.star.awt.XCallback;
 import com.sun.star.awt.XCheckBox;
 import com.sun.star.awt.XComboBox;
 import com.sun.star.awt.XControl;
@@ -34,6 +35,7 @@ import com.sun.star.awt.XMessageBox;
 import com.sun.star.awt.XMessageBoxFactory;
 import com.sun.star.awt.XNumericField;
 import com.sun.star.awt.XProgressBar;
+import com.sun.star.awt.XRequestCallback;
 import com.sun.star.awt.XTextComponent;
 import com.sun.star.awt.XToolkit;
 import com.sun.star.awt.XWindow;
@@ -43,6 +45,7 @@ import com.sun.star.beans.UnknownPropertyException;
 import com.sun.star.beans.XPropertySet;
 import com.sun.star.lang.WrappedTargetException;
 import com.sun.star.ucb.XFileIdentifierConverter;
+import com.sun.star.uno.Any;
 import com.sun.star.uno.Exception;
 import com.sun.star.uno.UnoRuntime;
 import com.sun.star.uno.XComponentContext;
@@ -272,6 +275,28 @@ public class DialogHelper {
     return UnoRuntime.queryInterface(XProgressBar.class, control);
   }
 
+  /**
+   * Runs a task on the main thread of the office, where the dialog handles its events, after the
+   * events that are waiting. If the task can't be posted it runs on the current thread.
+   *
+   * @param context the component context
+   * @param task the task
+   */
+  public static void runOnMainThread(final XComponentContext context, final Runnable task) {
+    try {
+      final XRequestCallback asyncCallback = UnoRuntime.queryInterface(XRequestCallback.class,
+          context.getServiceManager().createInstanceWithContext("com.sun.star.awt.AsyncCallback",
+              context));
+      if (asyncCallback != null) {
+        asyncCallback.addCallback((XCallback) data -> task.run(), Any.VOID);
+        return;
+      }
+    } catch (final Exception e) {
+      e.printStackTrace();
+    }
+    task.run();
+  }
+
   /**
    * Set the focus to an input field.
    *
@@ -17,17 +17,38 @@
 
 package nl.mossoft.loeiqt.helper;
 
+import com.sun.star.beans.PropertyValue;
+import com.sun.star.beans.PropertyVetoException;
+import com.sun.star.beans.UnknownPropertyException;
+import com.sun.star.beans.XMultiPropertySet;
 import com.sun.star.beans.XPropertySet;
+import com.sun.star.container.XNameContainer;
+import com.sun.star.document.XDocumentInsertable;
+import com.sun.star.document.XUndoManager;
+import com.sun.star.document.XUndoManagerSupplier;
 import com.sun.star.frame.XComponentLoader;
 import com.sun.star.frame.XController;
 import com.sun.star.frame.XDesktop;
+import com.sun.star.frame.XModel;
+import com.sun.star.lang.WrappedTargetException;
 import com.sun.star.lang.XComponent;
 import com.sun.star.lang.XMultiComponentFactory;
+import com.sun.star.lang.XMultiServiceFactory;
+import com.sun.star.sheet.XCellRangeData;
+import com.sun.star.style.XStyleFamiliesSupplier;
+import com.sun.star.table.XCellRange;
 import com.sun.star.text.XTextContent;
+import com.sun.star.text.XTextCursor;
 import com.sun.star.text.XTextDocument;
+import com.sun.star.text.XTextTable;
 import com.sun.star.text.XTextViewCursorSupplier;
+import com.sun.star.uno.Any;
 import com.sun.star.uno.UnoRuntime;
 import com.sun.star.uno.XComponentContext;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * Helps getting desktop, components, frames, cursors and other interfaces.
@@ -35,6 +56,109 @@ import com.sun.star.uno.XComponentContext;
  */
 public class DocumentHelper {
 
+  /**
+   * Collects property changes for an object and applies them with one call.
+   *
+   * <p>
+   * The batch remembers the values it applied and the values it read, and skips a change to the
+   * value the object already has. Use one batch per object for as long as nothing else changes the
+   * properties.
+   * </p>
+   */
+  public static final class PropertyBatch {
+
+    private final Map<String, Object> known = new HashMap<>();
+    // setPropertyValues needs the names sorted
+    private final Map<String, Object> pending = new TreeMap<>();
+    private final Object target;
+
+    /**
+     * Creates a batch for an object.
+     *
+     * @param target the object, a cursor or a style for example
+     */
+    public PropertyBatch(final Object target) {
+      this.target = target;
+    }
+
+    /**
+     * Applies the collected changes with one call, if there are any.
+     *
+     * @throws UnknownPropertyException if the object doesn't have a property
+     * @throws PropertyVetoException if a property is read only
+     * @throws WrappedTargetException if the object fails to change a property
+     */
+    public void apply()
+        throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+      if (pending.isEmpty()) {
+        return;
+      }
+      final String[] names = pending.keySet().toArray(new String[0]);
+      final Object[] values = pending.values().toArray();
+      pending.clear();
+
+      final XMultiPropertySet multiPropertySet =
+          UnoRuntime.queryInterface(XMultiPropertySet.class, target);
+      if (multiPropertySet != null) {
+        multiPropertySet.setPropertyValues(names, values);
+      } else {
+        final XPropertySet propertySet = getPropertySet(target);
+        for (int i = 0; i < names.length; i++) {
+          propertySet.setPropertyValue(names[i], values[i]);
+        }
+      }
+      for (int i = 0; i < names.length; i++) {
+        known.put(names[i], values[i]);
+      }
+    }
+
+    /**
+     * Returns the value of a property as it was last read or applied.
+     *
+     * @param name the name of the property
+     * @return the value or null if it is not known
+     */
+    public Object get(final String name) {
+      return known.get(name);
+    }
+
+    /**
+     * Reads the current values of properties with one call, so setting them to the same value is
+     * skipped.
+     *
+     * @param names the names of the properties
+     * @return this batch
+     */
+    public PropertyBatch read(final String... names) {
+      final XMultiPropertySet multiPropertySet =
+          UnoRuntime.queryInterface(XMultiPropertySet.class, target);
+      if (multiPropertySet != null) {
+        final Object[] values = multiPropertySet.getPropertyValues(names);
+        for (int i = 0; i < names.length && i < values.length; i++) {
+          known.put(names[i],
+              values[i] instanceof Any ? ((Any) values[i]).getObject() : values[i]);
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Collects a property change.
+     *
+     * @param name the name of the property
+     * @param value the value
+     * @return this batch
+     */
+    public PropertyBatch set(final String name, final Object value) {
+      if (known.containsKey(name) && Objects.equals(known.get(name), value)) {
+        pending.remove(name);
+      } else {
+        pending.put(name, value);
+      }
+      return this;
+    }
+  }
+
   public static XComponentLoader getComponentLoader(final XDesktop desktop) {
     return UnoRuntime.queryInterface(com.sun.star.frame.XComponentLoader.class, desktop);
   }
@@ -76,10 +200,125 @@ public class DocumentHelper {
     return UnoRuntime.queryInterface(XTextViewCursorSupplier.class, controller);
   }
 
+  public static XModel getModel(final Object document) {
+    return UnoRuntime.queryInterface(XModel.class, document);
+  }
+
   public static XPropertySet getPropertySet(final Object graphic) {
     return UnoRuntime.queryInterface(com.sun.star.beans.XPropertySet.class, graphic);
   }
 
+  /**
+   * Returns the undo manager of a document, or null if it has none.
+   */
+  public static XUndoManager getUndoManager(final Object document) {
+    final XUndoManagerSupplier undoManagerSupplier =
+        UnoRuntime.queryInterface(XUndoManagerSupplier.class, document);
+    return undoManagerSupplier == null ? null : undoManagerSupplier.getUndoManager();
+  }
+
+  /**
+   * Inserts a document at the position of a text cursor.
+   *
+   * @param cursor the text cursor
+   * @param url the url of the document
+   * @param filterName the import filter for the document
+   * @return true if the document was inserted
+   */
+  public static boolean insertDocument(final XTextCursor cursor, final String url,
+      final String filterName) {
+    final XDocumentInsertable insertable =
+        UnoRuntime.queryInterface(XDocumentInsertable.class, cursor);
+    if (insertable == null) {
+      return false;
+    }
+    final PropertyValue filter = new PropertyValue();
+    filter.Name = "FilterName";
+    filter.Value = filterName;
+    try {
+      insertable.insertDocumentFromURL(url, new PropertyValue[] {filter});
+      return true;
+    } catch (final com.sun.star.lang.IllegalArgumentException | com.sun.star.io.IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Inserts a table before the paragraph of a text cursor. All the cells are filled with one call,
+   * and each column gets its own paragraph style.
+   *
+   * @param document the document
+   * @param cursor the text cursor
+   * @param data the text of the cells, by row and column
+   * @param columnStyles the names of the paragraph styles of the columns
+   * @return true if the table was inserted
+   */
+  public static boolean insertTable(final XTextDocument document, final XTextCursor cursor,
+      final Object[][] data, final String[] columnStyles) {
+    final int rows = data.length;
+    final int columns = columnStyles.length;
+    try {
+      final XTextTable table = UnoRuntime.queryInterface(XTextTable.class,
+          UnoRuntime.queryInterface(XMultiServiceFactory.class, document)
+              .createInstance("com.sun.star.text.TextTable"));
+      table.initialize(rows, columns);
+      cursor.getText().insertTextContent(cursor, table, false);
+
+      final XCellRange cells = UnoRuntime.queryInterface(XCellRange.class, table);
+      final XCellRangeData cellData = UnoRuntime.queryInterface(XCellRangeData.class,
+          cells.getCellRangeByPosition(0, 0, columns - 1, rows - 1));
+      cellData.setDataArray(data);
+
+      for (int c = 0; c < columns; c++) {
+        new PropertyBatch(cells.getCellRangeByPosition(c, 0, c, rows - 1))
+            .set("ParaStyleName", columnStyles[c]).apply();
+      }
+      return true;
+    } catch (final com.sun.star.uno.Exception e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Creates a paragraph style in a document, or updates it if it exists.
+   *
+   * @param document the document
+   * @param name the name of the style
+   * @param names the names of the properties of the style
+   * @param values the values of the properties
+   * @return true if the style is created or updated
+   */
+  public static boolean setParagraphStyle(final XTextDocument document, final String name,
+      final String[] names, final Object[] values) {
+    try {
+      final XStyleFamiliesSupplier familiesSupplier =
+          UnoRuntime.queryInterface(XStyleFamiliesSupplier.class, document);
+      final XNameContainer paragraphStyles = UnoRuntime.queryInterface(XNameContainer.class,
+          familiesSupplier.getStyleFamilies().getByName("ParagraphStyles"));
+
+      final PropertyBatch batch;
+      if (paragraphStyles.hasByName(name)) {
+        batch = new PropertyBatch(paragraphStyles.getByName(name)).read(names);
+      } else {
+        final Object style = UnoRuntime.queryInterface(XMultiServiceFactory.class, document)
+            .createInstance("com.sun.star.style.ParagraphStyle");
+        paragraphStyles.insertByName(name, style);
+        batch = new PropertyBatch(style);
+      }
+
+      for (int i = 0; i < names.length; i++) {
+        batch.set(names[i], values[i]);
+      }
+      batch.apply();
+      return true;
+    } catch (final com.sun.star.uno.Exception e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
   private DocumentHelper() {}
 
 }
@@ -17,6 +17,7 @@
 
 package nl.mossoft.loeiqt.helper;
 
+import com.sun.star.beans.XPropertySet;
 import com.sun.star.deployment.PackageInformationProvider;
 import com.sun.star.deployment.XPackageInformationProvider;
 import com.sun.star.uno.Exception;
@@ -32,6 +33,7 @@ public class FileHelper {
 
   private static final String DIALOG_RESOURCES = "dialog/";
   private static final String QURAN_RESOURCES = "resources/quran/";
+  private static final String USER_DATA = "nl.mossoft.loeiqt.insertqurantext";
 
   /**
    * Returns a path to a dialog file.
@@ -84,5 +86,31 @@ public class FileHelper {
     return getFilePath(QURAN_RESOURCES + xdlFile, xcontext);
   }
 
+  /**
+   * Returns the directory for data the extension keeps in the user profile, or null on failure.
+   */
+  public static File getUserDataPath(final XComponentContext xcontext) {
+    final String userConfig;
+    try {
+      final Object pathSettings = xcontext.getServiceManager()
+          .createInstanceWithContext("com.sun.star.util.PathSettings", xcontext);
+      userConfig = (String) UnoRuntime.queryInterface(XPropertySet.class, pathSettings)
+          .getPropertyValue("UserConfig");
+    } catch (final Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+    File dir;
+    try {
+      dir = new File(new File(new URL(userConfig).toURI()), USER_DATA);
+    } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e1) {
+      return null;
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      return null;
+    }
+    return dir;
+  }
+
   private FileHelper() {}
 }
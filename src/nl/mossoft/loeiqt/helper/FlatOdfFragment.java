@@ -0,0 +1,534 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A passage of paragraphs written as a flat ODF text document, so it can be inserted into a
+ * document with one call instead of several calls per paragraph. It can also be written as an ODF
+ * text package, an .odt file, without LibreOffice.
+ *
+ * <p>
+ * Every paragraph refers to a named paragraph style with its direction, alignment, font and font
+ * size. The styles are included in the fragment, but when the fragment is inserted, styles that
+ * already exist in the document are used instead.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class FlatOdfFragment {
+
+  /**
+   * A paragraph or table of the body.
+   */
+  private interface Content {
+
+    /**
+     * Writes the content.
+     *
+     * @param writer the writer
+     * @throws XMLStreamException if the content can't be written
+     */
+    void write(XMLStreamWriter writer) throws XMLStreamException;
+  }
+
+  /**
+   * A paragraph of the fragment.
+   */
+  private static final class Paragraph implements Content {
+
+    private final String style;
+    private final String text;
+
+    private Paragraph(final String text, final String style) {
+      this.text = text;
+      this.style = style;
+    }
+
+    @Override
+    public void write(final XMLStreamWriter writer) throws XMLStreamException {
+      writer.writeStartElement(TEXT, "p");
+      writer.writeAttribute(TEXT, "style-name", style);
+      writeText(writer, text);
+      writer.writeEndElement();
+    }
+  }
+
+  /**
+   * The attributes of a named paragraph style.
+   */
+  private static final class Style {
+
+    private final String fontName;
+    private final double fontSize;
+    private final boolean heading;
+    private final String name;
+    private final boolean pageBreakBefore;
+    private final boolean rightToLeft;
+
+    private Style(final String name, final boolean rightToLeft, final String fontName,
+        final double fontSize, final boolean heading, final boolean pageBreakBefore) {
+      this.name = name;
+      this.rightToLeft = rightToLeft;
+      this.fontName = fontName;
+      this.fontSize = fontSize;
+      this.heading = heading;
+      this.pageBreakBefore = pageBreakBefore;
+    }
+  }
+
+  /**
+   * A table of the fragment, with a paragraph style per column.
+   */
+  private static final class Table implements Content {
+
+    private final Object[][] cells;
+    private final String name;
+    private final String[] styles;
+
+    private Table(final String name, final Object[][] cells, final String[] styles) {
+      this.name = name;
+      this.cells = cells;
+      this.styles = styles;
+    }
+
+    @Override
+    public void write(final XMLStreamWriter writer) throws XMLStreamException {
+      writer.writeStartElement(TABLE, "table");
+      writer.writeAttribute(TABLE, "name", name);
+      writer.writeEmptyElement(TABLE, "table-column");
+      writer.writeAttribute(TABLE, "number-columns-repeated", Integer.toString(styles.length));
+      for (final Object[] row : cells) {
+        writer.writeStartElement(TABLE, "table-row");
+        for (int c = 0; c < styles.length; c++) {
+          writer.writeStartElement(TABLE, "table-cell");
+          writer.writeAttribute(OFFICE, "value-type", "string");
+          writer.writeStartElement(TEXT, "p");
+          writer.writeAttribute(TEXT, "style-name", styles[c]);
+          writeText(writer, row[c] == null ? "" : row[c].toString());
+          writer.writeEndElement();
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+      }
+      writer.writeEndElement();
+    }
+  }
+
+  public static final String FILTER_NAME = "OpenDocument Text Flat XML";
+  public static final String MIMETYPE = "application/vnd.oasis.opendocument.text";
+
+  private static final String MANIFEST =
+      "urn:oasis:names:tc:opendocument:xmlns:manifest:1.0";
+
+  private static final String FO = "urn:oasis:names:tc:opendocument:xmlns:xsl-fo-compatible:1.0";
+  private static final String OFFICE = "urn:oasis:names:tc:opendocument:xmlns:office:1.0";
+  private static final String STYLE = "urn:oasis:names:tc:opendocument:xmlns:style:1.0";
+  private static final String SVG = "urn:oasis:names:tc:opendocument:xmlns:svg-compatible:1.0";
+  private static final String TABLE = "urn:oasis:names:tc:opendocument:xmlns:table:1.0";
+  private static final String TEXT = "urn:oasis:names:tc:opendocument:xmlns:text:1.0";
+
+  /**
+   * Encodes a style name as an ODF style name, a space becomes _20_ for example.
+   *
+   * @param name the style name
+   * @return the encoded name
+   */
+  private static String encodeStyleName(final String name) {
+    final StringBuilder encoded = new StringBuilder();
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      final boolean letter = c < 0x80 && Character.isLetter(c);
+      final boolean other = c < 0x80 && (Character.isDigit(c) || c == '-' || c == '.');
+      if (letter || i > 0 && other) {
+        encoded.append(c);
+      } else {
+        encoded.append('_').append(Integer.toHexString(c)).append('_');
+      }
+    }
+    return encoded.toString();
+  }
+
+  /**
+   * Writes an uncompressed entry, as the mimetype of a package must be.
+   *
+   * @param zip the package
+   * @param name the name of the entry
+   * @param data the content of the entry
+   * @throws IOException if the entry can't be written
+   */
+  private static void putStoredEntry(final ZipOutputStream zip, final String name,
+      final byte[] data) throws IOException {
+    final CRC32 crc = new CRC32();
+    crc.update(data);
+    final ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(data.length);
+    entry.setCompressedSize(data.length);
+    entry.setCrc(crc.getValue());
+    zip.putNextEntry(entry);
+    zip.write(data);
+    zip.closeEntry();
+  }
+
+  /**
+   * Starts an ODF document element with the namespaces of the fragment.
+   *
+   * @param out the stream to write to
+   * @param element the name of the document element
+   * @return the writer
+   * @throws XMLStreamException if the document can't be started
+   */
+  private static XMLStreamWriter startDocument(final OutputStream out, final String element)
+      throws XMLStreamException {
+    final XMLStreamWriter writer =
+        XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.setPrefix("office", OFFICE);
+    writer.setPrefix("style", STYLE);
+    writer.setPrefix("text", TEXT);
+    writer.setPrefix("table", TABLE);
+    writer.setPrefix("fo", FO);
+    writer.setPrefix("svg", SVG);
+    writer.writeStartElement(OFFICE, element);
+    writer.writeNamespace("office", OFFICE);
+    writer.writeNamespace("style", STYLE);
+    writer.writeNamespace("text", TEXT);
+    writer.writeNamespace("table", TABLE);
+    writer.writeNamespace("fo", FO);
+    writer.writeNamespace("svg", SVG);
+    writer.writeAttribute(OFFICE, "version", "1.2");
+    return writer;
+  }
+
+  /**
+   * Writes a named paragraph style.
+   *
+   * @param writer the writer
+   * @param style the style
+   * @throws XMLStreamException if the style can't be written
+   */
+  private static void writeStyle(final XMLStreamWriter writer, final Style style)
+      throws XMLStreamException {
+    writer.writeStartElement(STYLE, "style");
+    writer.writeAttribute(STYLE, "name", encodeStyleName(style.name));
+    writer.writeAttribute(STYLE, "display-name", style.name);
+    writer.writeAttribute(STYLE, "family", "paragraph");
+    writer.writeAttribute(STYLE, "parent-style-name", "Standard");
+
+    writer.writeEmptyElement(STYLE, "paragraph-properties");
+    if (style.heading) {
+      writer.writeAttribute(FO, "text-align", "center");
+    } else {
+      writer.writeAttribute(FO, "text-align", style.rightToLeft ? "end" : "start");
+    }
+    writer.writeAttribute(STYLE, "writing-mode", style.rightToLeft ? "rl-tb" : "lr-tb");
+    if (style.pageBreakBefore) {
+      writer.writeAttribute(FO, "break-before", "page");
+    }
+
+    writer.writeEmptyElement(STYLE, "text-properties");
+    if (style.heading) {
+      writer.writeAttribute(FO, "font-weight", "bold");
+      writer.writeAttribute(STYLE, "font-weight-complex", "bold");
+    }
+    if (style.fontName != null && !style.fontName.isEmpty()) {
+      writer.writeAttribute(STYLE, style.rightToLeft ? "font-name-complex" : "font-name",
+          style.fontName);
+    }
+    if (style.fontSize > 0) {
+      final String size = style.fontSize + "pt";
+      if (style.rightToLeft) {
+        writer.writeAttribute(STYLE, "font-size-complex", size);
+      } else {
+        writer.writeAttribute(FO, "font-size", size);
+      }
+    }
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes the text of a paragraph, keeping spaces that ODF would otherwise collapse.
+   *
+   * @param writer the writer
+   * @param text the text
+   * @throws XMLStreamException if the text can't be written
+   */
+  private static void writeText(final XMLStreamWriter writer, final String text)
+      throws XMLStreamException {
+    final StringBuilder run = new StringBuilder();
+    int i = 0;
+    while (i < text.length()) {
+      final char c = text.charAt(i);
+      if (c == '\t') {
+        writer.writeCharacters(run.toString());
+        run.setLength(0);
+        writer.writeEmptyElement(TEXT, "tab");
+        i++;
+      } else if (c == ' ') {
+        int end = i;
+        while (end < text.length() && text.charAt(end) == ' ') {
+          end++;
+        }
+        int spaces = end - i;
+        // only a single space between words survives as is, the others are written as text:s
+        if (run.length() > 0 && end < text.length()) {
+          run.append(' ');
+          spaces--;
+        }
+        if (spaces > 0) {
+          writer.writeCharacters(run.toString());
+          run.setLength(0);
+          writer.writeEmptyElement(TEXT, "s");
+          if (spaces > 1) {
+            writer.writeAttribute(TEXT, "c", Integer.toString(spaces));
+          }
+        }
+        i = end;
+      } else {
+        run.append(c);
+        i++;
+      }
+    }
+    writer.writeCharacters(run.toString());
+  }
+
+  private final List<Content> contents = new ArrayList<>();
+  private final Set<String> fontNames = new LinkedHashSet<>();
+  private int paragraphCount;
+  private final Map<String, Style> styles = new LinkedHashMap<>();
+  private int tableCount;
+
+  /**
+   * Adds paragraphs. A new line in the text starts a new paragraph with the same style.
+   *
+   * @param text the text
+   * @param styleName the name of the paragraph style
+   */
+  public void addParagraph(final String text, final String styleName) {
+    final String style = encodeStyleName(styleName);
+    for (final String line : text.split("\n", -1)) {
+      contents.add(new Paragraph(line, style));
+      paragraphCount++;
+    }
+  }
+
+  /**
+   * Adds a named paragraph style for centered, bold headings, or replaces it.
+   *
+   * @param name the name of the style
+   * @param pageBreakBefore true to start every heading on a new page
+   */
+  public void addHeadingStyle(final String name, final boolean pageBreakBefore) {
+    styles.put(name, new Style(name, false, null, 0, true, pageBreakBefore));
+  }
+
+  /**
+   * Adds a named paragraph style, or replaces it.
+   *
+   * @param name the name of the style
+   * @param rightToLeft true for right to left paragraphs
+   * @param fontName the font, for complex text if right to left
+   * @param fontSize the font size in points
+   */
+  public void addParagraphStyle(final String name, final boolean rightToLeft,
+      final String fontName, final double fontSize) {
+    styles.put(name, new Style(name, rightToLeft, fontName, fontSize, false, false));
+    if (fontName != null && !fontName.isEmpty()) {
+      fontNames.add(fontName);
+    }
+  }
+
+  /**
+   * Adds a table, a row per row of cells, with a paragraph style per column.
+   *
+   * @param cells the cells, by row and column
+   * @param columnStyles the names of the paragraph styles of the columns
+   */
+  public void addTable(final Object[][] cells, final String[] columnStyles) {
+    final String[] encoded = new String[columnStyles.length];
+    for (int c = 0; c < encoded.length; c++) {
+      encoded[c] = encodeStyleName(columnStyles[c]);
+    }
+    contents.add(new Table("Table" + ++tableCount, cells, encoded));
+  }
+
+  /**
+   * Returns the number of paragraphs, not counting those in tables.
+   *
+   * @return the number of paragraphs
+   */
+  public int getParagraphCount() {
+    return paragraphCount;
+  }
+
+  /**
+   * Writes the fragment.
+   *
+   * @param out the stream to write to
+   * @throws XMLStreamException if the fragment can't be written
+   */
+  public void write(final OutputStream out) throws XMLStreamException {
+    final XMLStreamWriter writer = startDocument(out, "document");
+    writer.writeAttribute(OFFICE, "mimetype", MIMETYPE);
+    writeFontFaceDecls(writer);
+    writeStyles(writer);
+    writeBody(writer);
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.close();
+  }
+
+  /**
+   * Writes the body.
+   *
+   * @param writer the writer
+   * @throws XMLStreamException if the body can't be written
+   */
+  private void writeBody(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartElement(OFFICE, "body");
+    writer.writeStartElement(OFFICE, "text");
+    for (final Content content : contents) {
+      content.write(writer);
+    }
+    writer.writeEndElement();
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes the declarations of the fonts of the styles.
+   *
+   * @param writer the writer
+   * @throws XMLStreamException if the declarations can't be written
+   */
+  private void writeFontFaceDecls(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartElement(OFFICE, "font-face-decls");
+    for (final String fontName : fontNames) {
+      writer.writeEmptyElement(STYLE, "font-face");
+      writer.writeAttribute(STYLE, "name", fontName);
+      writer.writeAttribute(SVG, "font-family", "'" + fontName + "'");
+    }
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes the fragment as an ODF text package: the mimetype, uncompressed and first, then the
+   * content, the styles and the manifest.
+   *
+   * @param out the stream to write to, it is not closed
+   * @throws IOException if the package can't be written
+   * @throws XMLStreamException if the fragment can't be written
+   */
+  public void writePackage(final OutputStream out) throws IOException, XMLStreamException {
+    final ZipOutputStream zip = new ZipOutputStream(out);
+    putStoredEntry(zip, "mimetype", MIMETYPE.getBytes("US-ASCII"));
+
+    zip.putNextEntry(new ZipEntry("content.xml"));
+    XMLStreamWriter writer = startDocument(zip, "document-content");
+    writeFontFaceDecls(writer);
+    writeBody(writer);
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.close();
+    zip.closeEntry();
+
+    zip.putNextEntry(new ZipEntry("styles.xml"));
+    writer = startDocument(zip, "document-styles");
+    writeFontFaceDecls(writer);
+    writeStyles(writer);
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.close();
+    zip.closeEntry();
+
+    zip.putNextEntry(new ZipEntry("META-INF/manifest.xml"));
+    writer = XMLOutputFactory.newInstance().createXMLStreamWriter(zip, "UTF-8");
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.setPrefix("manifest", MANIFEST);
+    writer.writeStartElement(MANIFEST, "manifest");
+    writer.writeNamespace("manifest", MANIFEST);
+    writer.writeAttribute(MANIFEST, "version", "1.2");
+    final String[][] entries = {{"/", MIMETYPE}, {"content.xml", "text/xml"},
+        {"styles.xml", "text/xml"}};
+    for (final String[] entry : entries) {
+      writer.writeEmptyElement(MANIFEST, "file-entry");
+      writer.writeAttribute(MANIFEST, "full-path", entry[0]);
+      if (entry[0].equals("/")) {
+        writer.writeAttribute(MANIFEST, "version", "1.2");
+      }
+      writer.writeAttribute(MANIFEST, "media-type", entry[1]);
+    }
+    writer.writeEndElement();
+    writer.writeEndDocument();
+    writer.close();
+    zip.closeEntry();
+    zip.finish();
+  }
+
+  /**
+   * Writes the named paragraph styles.
+   *
+   * @param writer the writer
+   * @throws XMLStreamException if the styles can't be written
+   */
+  private void writeStyles(final XMLStreamWriter writer) throws XMLStreamException {
+    writer.writeStartElement(OFFICE, "styles");
+    for (final Style style : styles.values()) {
+      writeStyle(writer, style);
+    }
+    writer.writeEndElement();
+  }
+
+  /**
+   * Writes the fragment to a temporary file that only the user can read.
+   *
+   * @return the file, delete it when it is inserted
+   * @throws IOException if the file can't be written
+   * @throws XMLStreamException if the fragment can't be written
+   */
+  public File writeTempFile() throws IOException, XMLStreamException {
+    // created with the permissions for the user only from the start, on POSIX file systems
+    final Path file = Files.createTempFile("quranlo", ".fodt");
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+      write(out);
+    } catch (IOException | XMLStreamException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    return file.toFile();
+  }
+}
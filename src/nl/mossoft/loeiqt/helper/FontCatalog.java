@@ -0,0 +1,359 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import com.sun.star.uno.XComponentContext;
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Catalog of the installed font families and the scripts they support.
+ *
+ * <p>
+ * Checking every family for the scripts is slow when many fonts are installed, so the catalog is
+ * kept in the user profile together with a fingerprint of the font directories. The dialog is
+ * filled from the kept catalog at once, while the fingerprint is checked on a background thread.
+ * Only when the fonts have changed, the families are checked again and the catalog is replaced,
+ * the next time the dialog is opened it shows the new fonts.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class FontCatalog {
+
+  public static final String ARABIC = "Arabic";
+  public static final String LATIN = "Latin";
+
+  private static final String CACHE_FILE = "fonts.properties";
+  private static final String FAMILY_PREFIX = "family.";
+  private static final String FINGERPRINT = "fingerprint";
+  private static final int MAX_DEPTH = 8;
+  private static final AtomicBoolean REFRESHING = new AtomicBoolean();
+  // a character every font of the script has
+  private static final Map<String, Integer> SCRIPT_CHARACTERS = new LinkedHashMap<>();
+
+  private static volatile FontCatalog instance;
+
+  static {
+    SCRIPT_CHARACTERS.put(ARABIC, 0x0627);
+    SCRIPT_CHARACTERS.put(LATIN, 0x0061);
+  }
+
+  /**
+   * Adds the directory and its subdirectories to a fingerprint.
+   *
+   * @param dir the directory
+   * @param crc the fingerprint
+   * @param depth the depth of the directory below a font directory
+   * @return the number of directories added
+   */
+  private static int addDirectory(final File dir, final CRC32 crc, final int depth) {
+    // a font added to or removed from a directory changes its modification time
+    crc.update(dir.getPath().getBytes(StandardCharsets.UTF_8));
+    final long modified = dir.lastModified();
+    for (int i = 0; i < Long.BYTES; i++) {
+      crc.update((int) (modified >>> (Byte.SIZE * i)));
+    }
+    int count = 1;
+    final File[] subdirs = depth < MAX_DEPTH ? dir.listFiles(File::isDirectory) : null;
+    if (subdirs != null) {
+      for (final File subdir : subdirs) {
+        count += addDirectory(subdir, crc, depth + 1);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Deletes a temporary file that is left after a failed save.
+   *
+   * @param tmpFile the file, or null if it wasn't created
+   */
+  private static void deleteTempFile(final Path tmpFile) {
+    if (tmpFile == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(tmpFile);
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the catalog of the installed fonts, from memory or from the user profile, and starts
+   * checking in the background if the fonts have changed. Only the first time the fonts are
+   * checked while waiting.
+   *
+   * @param context the component context
+   * @return the catalog
+   */
+  public static FontCatalog get(final XComponentContext context) {
+    final File dir = FileHelper.getUserDataPath(context);
+    return get(dir == null ? null : new File(dir, CACHE_FILE));
+  }
+
+  /**
+   * Returns the catalog of the installed fonts, from memory or from a file, and starts checking in
+   * the background if the fonts have changed.
+   *
+   * @param cacheFile the file to keep the catalog in, or null to keep it in memory only
+   * @return the catalog
+   */
+  static FontCatalog get(final File cacheFile) {
+    FontCatalog catalog = instance;
+    if (catalog == null && cacheFile != null && cacheFile.isFile()) {
+      catalog = load(cacheFile);
+      instance = catalog;
+    }
+    if (catalog == null) {
+      catalog = scan(getFingerprint());
+      instance = catalog;
+      catalog.save(cacheFile);
+    } else {
+      refreshInBackground(catalog, cacheFile);
+    }
+    return catalog;
+  }
+
+  /**
+   * Returns the directories fonts are installed in on this platform.
+   *
+   * @return the directories, some may not exist
+   */
+  private static List<File> getFontDirectories() {
+    final List<File> dirs = new ArrayList<>();
+    final String os = System.getProperty("os.name", "").toLowerCase();
+    final String home = System.getProperty("user.home", "");
+    if (os.startsWith("windows")) {
+      final String windir = System.getenv("WINDIR");
+      dirs.add(new File(windir == null ? "C:\\Windows" : windir, "Fonts"));
+      final String localAppData = System.getenv("LOCALAPPDATA");
+      if (localAppData != null) {
+        dirs.add(new File(localAppData, "Microsoft\\Windows\\Fonts"));
+      }
+    } else if (os.startsWith("mac")) {
+      dirs.add(new File("/System/Library/Fonts"));
+      dirs.add(new File("/Library/Fonts"));
+      dirs.add(new File(home, "Library/Fonts"));
+    } else {
+      dirs.add(new File("/usr/share/fonts"));
+      dirs.add(new File("/usr/local/share/fonts"));
+      dirs.add(new File(home, ".fonts"));
+      dirs.add(new File(home, ".local/share/fonts"));
+    }
+    dirs.add(new File(System.getProperty("java.home", ""), "lib/fonts"));
+    return dirs;
+  }
+
+  /**
+   * Returns the fingerprint of the font directories, that changes when a font is added or removed.
+   *
+   * @return the fingerprint
+   */
+  private static String getFingerprint() {
+    final CRC32 crc = new CRC32();
+    int count = 0;
+    for (final File dir : getFontDirectories()) {
+      if (dir.isDirectory()) {
+        count += addDirectory(dir, crc, 0);
+      }
+    }
+    return Long.toHexString(crc.getValue()) + "-" + count;
+  }
+
+  /**
+   * Reads a catalog that was kept in a file.
+   *
+   * @param cacheFile the file
+   * @return the catalog or null if it can't be read
+   */
+  private static FontCatalog load(final File cacheFile) {
+    final Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(cacheFile)) {
+      properties.load(in);
+    } catch (final IOException | IllegalArgumentException e) {
+      e.printStackTrace();
+      return null;
+    }
+    final String fingerprint = properties.getProperty(FINGERPRINT);
+    if (fingerprint == null) {
+      return null;
+    }
+    final Map<String, List<String>> families = new TreeMap<>();
+    for (final String key : properties.stringPropertyNames()) {
+      if (key.startsWith(FAMILY_PREFIX)) {
+        final List<String> scripts = new ArrayList<>();
+        for (final String script : properties.getProperty(key).split(",")) {
+          if (!script.isEmpty()) {
+            scripts.add(script);
+          }
+        }
+        families.put(key.substring(FAMILY_PREFIX.length()), scripts);
+      }
+    }
+    return new FontCatalog(fingerprint, families);
+  }
+
+  /**
+   * Checks in the background if the fonts have changed, and if so replaces the catalog.
+   *
+   * @param catalog the current catalog
+   * @param cacheFile the file to keep the catalog in, or null
+   */
+  private static void refreshInBackground(final FontCatalog catalog, final File cacheFile) {
+    if (!REFRESHING.compareAndSet(false, true)) {
+      return;
+    }
+    final Thread thread = new Thread(() -> {
+      try {
+        final String fingerprint = getFingerprint();
+        if (!fingerprint.equals(catalog.fingerprint)) {
+          final FontCatalog scanned = scan(fingerprint);
+          instance = scanned;
+          scanned.save(cacheFile);
+        }
+      } catch (final RuntimeException e) {
+        e.printStackTrace();
+      } finally {
+        REFRESHING.set(false);
+      }
+    }, "QuranLO font refresh");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Checks every installed font family for the scripts it supports.
+   *
+   * @param fingerprint the fingerprint of the font directories
+   * @return the catalog
+   */
+  private static FontCatalog scan(final String fingerprint) {
+    final Map<String, List<String>> families = new TreeMap<>();
+    for (final String family : GraphicsEnvironment.getLocalGraphicsEnvironment()
+        .getAvailableFontFamilyNames()) {
+      final Font font = new Font(family, Font.PLAIN, 10);
+      final List<String> scripts = new ArrayList<>();
+      for (final Map.Entry<String, Integer> script : SCRIPT_CHARACTERS.entrySet()) {
+        if (font.canDisplay(script.getValue())) {
+          scripts.add(script.getKey());
+        }
+      }
+      families.put(family, scripts);
+    }
+    return new FontCatalog(fingerprint, families);
+  }
+
+  private final Map<String, List<String>> families;
+  private final String fingerprint;
+
+  private FontCatalog(final String fingerprint, final Map<String, List<String>> families) {
+    this.fingerprint = fingerprint;
+    this.families = Collections.unmodifiableMap(families);
+  }
+
+  /**
+   * Returns all the font families.
+   *
+   * @return the family names, sorted
+   */
+  public String[] getFamilies() {
+    return families.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * Returns the font families that support a script.
+   *
+   * @param script the script, like {@link #ARABIC}
+   * @return the family names, sorted
+   */
+  public String[] getFamilies(final String script) {
+    final List<String> selected = new ArrayList<>();
+    for (final Map.Entry<String, List<String>> family : families.entrySet()) {
+      if (family.getValue().contains(script)) {
+        selected.add(family.getKey());
+      }
+    }
+    return selected.toArray(new String[0]);
+  }
+
+  /**
+   * Returns true if a font family supports a script.
+   *
+   * @param family the family name
+   * @param script the script, like {@link #ARABIC}
+   * @return true if supported, false if not or if the family isn't installed
+   */
+  public boolean supports(final String family, final String script) {
+    final List<String> scripts = families.get(family);
+    return scripts != null && scripts.contains(script);
+  }
+
+  /**
+   * Keeps the catalog in a file.
+   *
+   * @param cacheFile the file, or null to not keep it
+   */
+  private void save(final File cacheFile) {
+    if (cacheFile == null) {
+      return;
+    }
+    final Properties properties = new Properties();
+    properties.setProperty(FINGERPRINT, fingerprint);
+    for (final Map.Entry<String, List<String>> family : families.entrySet()) {
+      properties.setProperty(FAMILY_PREFIX + family.getKey(), String.join(",", family.getValue()));
+    }
+    // write to a temporary file of its own first, another office sharing the profile may save
+    // too, and replace the catalog in one step, so a reader never sees a partial catalog
+    Path tmpFile = null;
+    try {
+      tmpFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(),
+          cacheFile.getName(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmpFile)) {
+        properties.store(out, "QuranLO font catalog");
+      }
+      Files.move(tmpFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      e.printStackTrace();
+    } finally {
+      deleteTempFile(tmpFile);
+    }
+  }
+}
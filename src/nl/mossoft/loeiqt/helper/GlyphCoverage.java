@@ -0,0 +1,235 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks which fonts can display all the characters of a Qur'an text version.
+ *
+ * <p>
+ * The distinct characters of a version, a few hundred, are collected once, with the ornate
+ * parentheses of the ayah numbers for right to left text, from the pack of the version when it has
+ * one. The fonts are checked against them in parallel. The characters and the results are cached,
+ * so a font is checked only once per version while the office runs. The digits of the ayah
+ * numbers are chosen per font in the same way.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class GlyphCoverage {
+
+  /**
+   * How well a font covers a text version.
+   */
+  public static final class Result {
+
+    private final String family;
+    private final int[] missing;
+
+    private Result(final String family, final int[] missing) {
+      this.family = family;
+      this.missing = missing;
+    }
+
+    /**
+     * Returns the font family.
+     *
+     * @return the family name
+     */
+    public String getFamily() {
+      return family;
+    }
+
+    /**
+     * Returns the characters of the text version the font can't display.
+     *
+     * @return the code points, sorted
+     */
+    public int[] getMissing() {
+      return missing.clone();
+    }
+
+    /**
+     * Returns true if the font can display all characters of the text version.
+     *
+     * @return true if complete
+     */
+    public boolean isComplete() {
+      return missing.length == 0;
+    }
+  }
+
+  private static final ExecutorService ANALYZER = Executors.newFixedThreadPool(
+      Math.max(1, Runtime.getRuntime().availableProcessors()),
+      QuranReaderCache.newDaemonThreadFactory("QuranLO coverage", Thread.MIN_PRIORITY));
+  private static final Map<String, int[]> CODE_POINTS = new ConcurrentHashMap<>();
+  private static final Map<String, Integer> DIGIT_BASES = new ConcurrentHashMap<>();
+  // the digits preferred for right to left text, ASCII digits if a font has neither
+  private static final int[] RIGHT_TO_LEFT_DIGIT_BASES =
+      {AyahNumerals.BASE_ARABIC_INDIC, AyahNumerals.BASE_EXTENDED_ARABIC_INDIC};
+  private static final Map<String, Result> RESULTS = new ConcurrentHashMap<>();
+
+  /**
+   * Checks fonts against the characters of a text version, in parallel. Fonts that were checked
+   * before are taken from the cache.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param reader the reader of the version
+   * @param families the font families to check
+   * @return the results by family, in the order of the families, when all are checked
+   */
+  public static CompletableFuture<Map<String, Result>> analyze(final String language,
+      final String version, final QuranReader reader, final String[] families) {
+    // the characters are collected once, before the fonts are checked against them
+    return CompletableFuture.supplyAsync(() -> getCodePoints(language, version, reader), ANALYZER)
+        .thenCompose(codePoints -> analyze(language + "." + version, codePoints, families));
+  }
+
+  /**
+   * Checks fonts against the characters of a text version, in parallel.
+   *
+   * @param key the key of the version
+   * @param codePoints the characters of the version
+   * @param families the font families to check
+   * @return the results by family, in the order of the families, when all are checked
+   */
+  private static CompletableFuture<Map<String, Result>> analyze(final String key,
+      final int[] codePoints, final String[] families) {
+    final List<CompletableFuture<Result>> checks = new ArrayList<>(families.length);
+    for (final String family : families) {
+      final Result cached = RESULTS.get(family + "\n" + key);
+      checks.add(cached != null ? CompletableFuture.completedFuture(cached)
+          : CompletableFuture.supplyAsync(() -> {
+            final Result result = check(family, codePoints);
+            RESULTS.put(family + "\n" + key, result);
+            return result;
+          }, ANALYZER));
+    }
+    return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+      final Map<String, Result> results = new LinkedHashMap<>();
+      for (final CompletableFuture<Result> check : checks) {
+        final Result result = check.join();
+        results.put(result.family, result);
+      }
+      return results;
+    });
+  }
+
+  /**
+   * Checks a font against characters.
+   *
+   * @param family the font family
+   * @param codePoints the characters
+   * @return the result
+   */
+  private static Result check(final String family, final int[] codePoints) {
+    final Font font = new Font(family, Font.PLAIN, 10);
+    final int[] missing = new int[codePoints.length];
+    int count = 0;
+    for (final int codePoint : codePoints) {
+      if (!font.canDisplay(codePoint)) {
+        missing[count++] = codePoint;
+      }
+    }
+    final int[] result = new int[count];
+    System.arraycopy(missing, 0, result, 0, count);
+    return new Result(family, result);
+  }
+
+  /**
+   * Returns true if a font can display the ten digits of a base.
+   *
+   * @param font the font
+   * @param base the codepoint of the digit zero
+   * @return true if it has all digits
+   */
+  private static boolean displaysDigits(final Font font, final int base) {
+    for (int digit = 0; digit < 10; digit++) {
+      if (!font.canDisplay(base + digit)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the distinct characters of a text version, collected on first use. For right to left
+   * text the ornate parentheses of the ayah numbers are included.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param reader the reader of the version
+   * @return the code points, sorted, without white space
+   */
+  public static int[] getCodePoints(final String language, final String version,
+      final QuranReader reader) {
+    final String key = language + "." + version;
+    final int[] cached = CODE_POINTS.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    // collected outside the map, so reading the text doesn't block the map for other versions
+    final BitSet used = reader.getCodePoints();
+    if (InsertionPlan.isRightToLeft(language)) {
+      used.set(0xFD3E);
+      used.set(0xFD3F);
+    }
+    final int[] codePoints = used.stream().filter(c -> !Character.isWhitespace(c)).toArray();
+    final int[] other = CODE_POINTS.putIfAbsent(key, codePoints);
+    return other != null ? other : codePoints;
+  }
+
+  /**
+   * Returns the digits to number the ayat of right to left text with in a font: Arabic-Indic or
+   * else Extended Arabic-Indic digits if the font has them, and ASCII digits otherwise, also if
+   * the font isn't installed.
+   *
+   * @param family the font family
+   * @return the codepoint of the digit zero
+   */
+  public static int getDigitBase(final String family) {
+    return DIGIT_BASES.computeIfAbsent(family, name -> {
+      final Font font = new Font(name, Font.PLAIN, 10);
+      if (!name.equalsIgnoreCase(font.getFamily())) {
+        // a font that isn't installed is replaced by a logical font
+        return AyahNumerals.BASE_ASCII;
+      }
+      for (final int base : RIGHT_TO_LEFT_DIGIT_BASES) {
+        if (displaysDigits(font, base)) {
+          return base;
+        }
+      }
+      return AyahNumerals.BASE_ASCII;
+    });
+  }
+
+  private GlyphCoverage() {}
+}
@@ -0,0 +1,737 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The plan of what to insert for a selection of surahs, ayat, text versions, fonts, layout and
+ * numbering.
+ *
+ * <p>
+ * The plan doesn't depend on LibreOffice. It is an immutable list of batches, each a small part of
+ * the passage. A batch is rendered into paragraphs, or into the cells of a table, only when it is
+ * written, so the memory used doesn't depend on the size of the passage. The texts are read from
+ * an {@link AyatSource}, so the plan can be rendered from the cached readers of the extension, or
+ * from the files directly.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class InsertionPlan {
+
+  /**
+   * Reads the ayat of a text version.
+   */
+  public interface AyatSource {
+
+    /**
+     * Returns ayat of a surah.
+     *
+     * @param language the language of the text
+     * @param version the text version
+     * @param surahNumber the surah number
+     * @param from the first ayah
+     * @param to the last ayah, inclusive
+     * @return the ayat
+     */
+    List<String> getAyat(String language, String version, int surahNumber, long from, long to);
+
+    /**
+     * Returns the Bismillah.
+     *
+     * @param language the language of the text
+     * @param version the text version
+     * @return the Bismillah
+     */
+    String getBismillah(String language, String version);
+  }
+
+  /**
+   * A part of the passage: a range of ayat of a surah, for one text or for all texts.
+   */
+  public static final class Batch {
+
+    private final boolean bismillah;
+    private final boolean continued;
+    private final long from;
+    private final boolean heading;
+    private final boolean last;
+    private final int surahNumber;
+    private final int text;
+    private final long to;
+
+    private Batch(final int surahNumber, final int text, final long from, final long to,
+        final boolean heading, final boolean bismillah, final boolean continued,
+        final boolean last) {
+      this.surahNumber = surahNumber;
+      this.text = text;
+      this.from = from;
+      this.to = to;
+      this.heading = heading;
+      this.bismillah = bismillah;
+      this.continued = continued;
+      this.last = last;
+    }
+
+    /**
+     * Returns the first ayah of the batch.
+     *
+     * @return the ayah number
+     */
+    public long getFrom() {
+      return from;
+    }
+
+    /**
+     * Returns the surah of the batch.
+     *
+     * @return the surah number
+     */
+    public int getSurahNumber() {
+      return surahNumber;
+    }
+
+    /**
+     * Returns the ayah after the last ayah of the batch.
+     *
+     * @return the ayah number, exclusive
+     */
+    public long getTo() {
+      return to;
+    }
+
+    /**
+     * Returns true if the batch starts with the Bismillah.
+     *
+     * @return true if the batch has the Bismillah
+     */
+    public boolean hasBismillah() {
+      return bismillah;
+    }
+
+    /**
+     * Returns true if the batch starts with the heading of the surah.
+     *
+     * @return true if the batch has the heading
+     */
+    public boolean hasHeading() {
+      return heading;
+    }
+  }
+
+  /**
+   * Builds a plan.
+   */
+  public static final class Builder {
+
+    private int firstSurah = 1;
+    private long fromAyah;
+    private int lastSurah = 1;
+    private Layout layout = Layout.LINE_BY_LINE;
+    private boolean numbered = true;
+    private final List<Text> texts = new ArrayList<>();
+    private long toAyah;
+
+    private Builder() {}
+
+    /**
+     * Selects a range of ayat of a single surah, instead of all ayat.
+     *
+     * @param from the first ayah
+     * @param to the last ayah, inclusive
+     * @return this builder
+     */
+    public Builder ayat(final long from, final long to) {
+      this.fromAyah = from;
+      this.toAyah = to;
+      return this;
+    }
+
+    /**
+     * Builds the plan.
+     *
+     * @return the plan
+     */
+    public InsertionPlan build() {
+      if (texts.isEmpty()) {
+        throw new IllegalStateException("No text selected");
+      }
+      if (firstSurah < 1 || lastSurah > 114 || firstSurah > lastSurah) {
+        throw new IllegalStateException("No surahs " + firstSurah + "-" + lastSurah);
+      }
+      return new InsertionPlan(this);
+    }
+
+    /**
+     * Selects the layout.
+     *
+     * @param layout the layout
+     * @return this builder
+     */
+    public Builder layout(final Layout layout) {
+      this.layout = layout;
+      return this;
+    }
+
+    /**
+     * Selects if the ayat are numbered.
+     *
+     * @param numbered true to number the ayat
+     * @return this builder
+     */
+    public Builder numbered(final boolean numbered) {
+      this.numbered = numbered;
+      return this;
+    }
+
+    /**
+     * Selects a range of surahs.
+     *
+     * @param first the first surah number
+     * @param last the last surah number
+     * @return this builder
+     */
+    public Builder surahs(final int first, final int last) {
+      this.firstSurah = first;
+      this.lastSurah = last;
+      return this;
+    }
+
+    /**
+     * Adds a text version. The texts are written in the order they are added.
+     *
+     * @param language the language
+     * @param version the version
+     * @param fontName the font, used for the ayat numbers
+     * @return this builder
+     */
+    public Builder text(final String language, final String version, final String fontName) {
+      texts.add(new Text(language, version, fontName));
+      return this;
+    }
+  }
+
+  /**
+   * The layouts of the passage.
+   */
+  public enum Layout {
+    /** Every text as a block of ayat. */
+    BLOCK,
+    /** The texts mixed, every ayah a paragraph. */
+    LINE_BY_LINE,
+    /** The texts side by side in a table, every ayah a row. */
+    TABLE
+  }
+
+  /**
+   * A paragraph of the passage.
+   */
+  public static final class Paragraph {
+
+    private final int ayat;
+    private final boolean continued;
+    private final String styleName;
+    private final String text;
+
+    private Paragraph(final String text, final String styleName, final boolean continued,
+        final int ayat) {
+      this.text = text;
+      this.styleName = styleName;
+      this.continued = continued;
+      this.ayat = ayat;
+    }
+
+    /**
+     * Returns the number of ayat in the paragraph.
+     *
+     * @return the number of ayat
+     */
+    public int getAyat() {
+      return ayat;
+    }
+
+    /**
+     * Returns the name of the paragraph style.
+     *
+     * @return the style name
+     */
+    public String getStyleName() {
+      return styleName;
+    }
+
+    /**
+     * Returns the text of the paragraph.
+     *
+     * @return the text
+     */
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * Returns true if the text continues the previous paragraph, instead of starting a new one.
+     *
+     * @return true if continued
+     */
+    public boolean isContinued() {
+      return continued;
+    }
+  }
+
+  /**
+   * A text version of the passage.
+   */
+  public static final class Text {
+
+    private final String fontName;
+    private final String language;
+    private final AyahNumerals numerals;
+    private final boolean rightToLeft;
+    private final String version;
+
+    private Text(final String language, final String version, final String fontName) {
+      this.language = language;
+      this.version = version;
+      this.fontName = fontName;
+      this.rightToLeft = isRightToLeft(language);
+      this.numerals = getNumerals(fontName, rightToLeft);
+    }
+
+    /**
+     * Returns the font of the text.
+     *
+     * @return the font name
+     */
+    public String getFontName() {
+      return fontName;
+    }
+
+    /**
+     * Returns the language of the text.
+     *
+     * @return the language
+     */
+    public String getLanguage() {
+      return language;
+    }
+
+    /**
+     * Returns the version of the text.
+     *
+     * @return the version
+     */
+    public String getVersion() {
+      return version;
+    }
+  }
+
+  public static final int ALL_TEXTS = -1;
+  public static final int BATCH_AYAT = 20;
+  public static final String STYLE_ARABIC = "Quran Arabic";
+  public static final String STYLE_HEADING = "Quran Surah Heading";
+  public static final String STYLE_TRANSLATION = "Quran Translation";
+  public static final String STYLE_TRANSLITERATION = "Quran Transliteration";
+
+  private static final String ARABIC = "Arabic";
+  private static final Map<String, Integer> FONT_NUMBER_BASES = new HashMap<>();
+  private static final Set<String> RIGHT_TO_LEFT_LANGUAGES =
+      new HashSet<>(Arrays.asList("Arabic", "Urdu"));
+  private static final String TRANSLITERATION = "Transliteration";
+
+  static {
+    FONT_NUMBER_BASES.put("Al Qalam Quran Majeed", 0x06F0);
+    FONT_NUMBER_BASES.put("Al Qalam Quran Majeed 1", 0x06F0);
+    FONT_NUMBER_BASES.put("Al Qalam Quran Majeed 2", 0x06F0);
+    FONT_NUMBER_BASES.put("Noto Nastaliq Urdu", 0x0660);
+    FONT_NUMBER_BASES.put("KFGQPC Uthmanic Script HAFS", 0x0030);
+    FONT_NUMBER_BASES.put("me_quran", 0x0660);
+    FONT_NUMBER_BASES.put("Scheherazade", 0x0660);
+    FONT_NUMBER_BASES.put("Scheherazade quran", 0x0660);
+    FONT_NUMBER_BASES.put("Scheherazade New quran", 0x0660);
+  }
+
+  /**
+   * Creates a builder for a plan.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns an ayah with its number, after it in right to left text and before it otherwise.
+   *
+   * @param ayah the ayah
+   * @param ayahNumber the ayah number
+   * @param language the language of the ayah
+   * @param fontName the font of the ayah
+   * @return the ayah line
+   */
+  public static String getAyahLine(final String ayah, final long ayahNumber,
+      final String language, final String fontName) {
+    final boolean rightToLeft = isRightToLeft(language);
+    return getAyahLine(ayah, ayahNumber, rightToLeft, getNumerals(fontName, rightToLeft));
+  }
+
+  /**
+   * Returns an ayah with its number, after it in right to left text and before it otherwise.
+   *
+   * @param ayah the ayah
+   * @param ayahNumber the ayah number
+   * @param rightToLeft true for right to left text
+   * @param numerals the numerals of the font
+   * @return the ayah line
+   */
+  private static String getAyahLine(final String ayah, final long ayahNumber,
+      final boolean rightToLeft, final AyahNumerals numerals) {
+    final String marker = numerals.getMarker(ayahNumber, rightToLeft);
+    return rightToLeft ? ayah.concat(marker) : marker.concat(ayah);
+  }
+
+  /**
+   * Returns the codepoint for zero in a font. The fonts of which the digits are known to give
+   * problems have a fixed base, for right to left text the digits of the other fonts are chosen by
+   * what the font has, and left to right text uses ASCII digits.
+   *
+   * @param fontName the font name or null
+   * @param rightToLeft true for right to left text
+   * @return the codepoint
+   */
+  public static int getFontNumberBase(final String fontName, final boolean rightToLeft) {
+    final Integer base = FONT_NUMBER_BASES.get(fontName);
+    if (base != null) {
+      return base;
+    }
+    return rightToLeft && fontName != null ? GlyphCoverage.getDigitBase(fontName)
+        : AyahNumerals.BASE_ASCII;
+  }
+
+  /**
+   * Returns the numerals of the digits of a font.
+   *
+   * @param fontName the font name or null
+   * @param rightToLeft true for right to left text
+   * @return the numerals
+   */
+  public static AyahNumerals getNumerals(final String fontName, final boolean rightToLeft) {
+    return AyahNumerals.forBase(getFontNumberBase(fontName, rightToLeft));
+  }
+
+  /**
+   * Returns the name of the paragraph style for the text of a language.
+   *
+   * @param language the language
+   * @return the style name
+   */
+  public static String getParagraphStyleName(final String language) {
+    if (ARABIC.equals(language)) {
+      return STYLE_ARABIC;
+    } else if (TRANSLITERATION.equals(language)) {
+      return STYLE_TRANSLITERATION;
+    } else {
+      return STYLE_TRANSLATION;
+    }
+  }
+
+  /**
+   * Returns the name and number of a surah, as used for its heading.
+   *
+   * @param surahNumber the surah number
+   * @return the name and number
+   */
+  public static String getSurahHeading(final int surahNumber) {
+    return QuranReader.getSurahName(surahNumber) + " (" + surahNumber + ")";
+  }
+
+  /**
+   * Returns true if a surah starts with the Bismillah as a separate line.
+   *
+   * @param surahNumber the surah number
+   * @return true for all surahs but Al-Fatihah, where it is the first ayah, and At-Tawbah
+   */
+  public static boolean hasBismillah(final int surahNumber) {
+    return surahNumber != 1 && surahNumber != 9;
+  }
+
+  /**
+   * Returns true if a language is written right to left.
+   *
+   * @param language the language
+   * @return true if right to left
+   */
+  public static boolean isRightToLeft(final String language) {
+    return RIGHT_TO_LEFT_LANGUAGES.contains(language);
+  }
+
+  /**
+   * Returns the string representation of a number in the digits of a font for right to left text.
+   *
+   * @param n the number
+   * @param fontName the font name
+   * @return the number string
+   */
+  public static String numToAyatNumber(final long n, final String fontName) {
+    return getNumerals(fontName, true).getNumber(n);
+  }
+
+  private final List<Batch> batches;
+  private final int firstSurah;
+  private final long fromAyah;
+  private final int lastSurah;
+  private final Layout layout;
+  private final boolean numbered;
+  private final List<Text> texts;
+  private final long toAyah;
+
+  private InsertionPlan(final Builder builder) {
+    this.firstSurah = builder.firstSurah;
+    this.lastSurah = builder.lastSurah;
+    // an ayat range can only be selected for a single surah
+    final boolean range = builder.fromAyah > 0 && firstSurah == lastSurah;
+    this.fromAyah = range ? builder.fromAyah : 1;
+    this.toAyah = range ? builder.toAyah : 0;
+    this.layout = builder.layout;
+    this.numbered = builder.numbered;
+    this.texts = Collections.unmodifiableList(new ArrayList<>(builder.texts));
+    this.batches = Collections.unmodifiableList(planBatches());
+  }
+
+  /**
+   * Returns the number of ayat in the passage, counted for every text.
+   *
+   * @return the number of ayat
+   */
+  public long getAyatCount() {
+    long ayat = 0;
+    for (final Batch batch : batches) {
+      ayat += (batch.to - batch.from) * (batch.text == ALL_TEXTS ? texts.size() : 1);
+    }
+    return ayat;
+  }
+
+  /**
+   * Returns the batches of the passage, in the order they are written.
+   *
+   * @return the batches
+   */
+  public List<Batch> getBatches() {
+    return batches;
+  }
+
+  /**
+   * Returns the paragraph styles of the columns of a table.
+   *
+   * @return the style names, one per text
+   */
+  public String[] getColumnStyles() {
+    final String[] styles = new String[texts.size()];
+    for (int c = 0; c < styles.length; c++) {
+      styles[c] = getParagraphStyleName(texts.get(c).getLanguage());
+    }
+    return styles;
+  }
+
+  /**
+   * Returns the first surah of the passage.
+   *
+   * @return the surah number
+   */
+  public int getFirstSurah() {
+    return firstSurah;
+  }
+
+  /**
+   * Returns the last surah of the passage.
+   *
+   * @return the surah number
+   */
+  public int getLastSurah() {
+    return lastSurah;
+  }
+
+  /**
+   * Returns the layout of the passage.
+   *
+   * @return the layout
+   */
+  public Layout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Returns the texts of the passage.
+   *
+   * @return the texts
+   */
+  public List<Text> getTexts() {
+    return texts;
+  }
+
+  /**
+   * Returns true if the surahs have headings, when there is more than one.
+   *
+   * @return true if there are headings
+   */
+  public boolean hasHeadings() {
+    return firstSurah != lastSurah;
+  }
+
+  /**
+   * Returns true if the ayat are numbered.
+   *
+   * @return true if numbered
+   */
+  public boolean isNumbered() {
+    return numbered;
+  }
+
+  /**
+   * Divides the passage into batches. A table is one batch per surah, the other layouts have
+   * batches of {@link #BATCH_AYAT} ayat, for all texts line by line or per text as a block.
+   *
+   * @return the batches
+   */
+  private List<Batch> planBatches() {
+    final List<Batch> planned = new ArrayList<>();
+    for (int s = firstSurah; s <= lastSurah; s++) {
+      final long to = toAyah > 0 ? toAyah + 1 : QuranReader.getSurahSize(s) + 1;
+      final boolean bismillah = fromAyah == 1 && hasBismillah(s);
+      if (layout == Layout.TABLE) {
+        planned.add(new Batch(s, ALL_TEXTS, fromAyah, to, hasHeadings(), bismillah, false, true));
+      } else if (layout == Layout.LINE_BY_LINE) {
+        for (long chunk = fromAyah; chunk < to; chunk += BATCH_AYAT) {
+          final boolean first = chunk == fromAyah;
+          planned.add(new Batch(s, ALL_TEXTS, chunk, Math.min(chunk + BATCH_AYAT, to),
+              first && hasHeadings(), first && bismillah, false, false));
+        }
+      } else {
+        for (int t = 0; t < texts.size(); t++) {
+          for (long chunk = fromAyah; chunk < to; chunk += BATCH_AYAT) {
+            final boolean first = chunk == fromAyah;
+            planned.add(new Batch(s, t, chunk, Math.min(chunk + BATCH_AYAT, to),
+                first && t == 0 && hasHeadings(), first && bismillah, !first,
+                chunk + BATCH_AYAT >= to));
+          }
+        }
+      }
+    }
+    return planned;
+  }
+
+  /**
+   * Renders a batch into paragraphs.
+   *
+   * @param batch the batch
+   * @param source the source of the ayat
+   * @return the paragraphs
+   */
+  public List<Paragraph> render(final Batch batch, final AyatSource source) {
+    final List<Paragraph> paragraphs = new ArrayList<>();
+    if (batch.heading) {
+      paragraphs.add(new Paragraph(getSurahHeading(batch.surahNumber), STYLE_HEADING, false, 0));
+    }
+    final List<Text> batchTexts =
+        batch.text == ALL_TEXTS ? texts : Collections.singletonList(texts.get(batch.text));
+    if (batch.bismillah) {
+      for (final Text text : batchTexts) {
+        paragraphs.add(new Paragraph(source.getBismillah(text.language, text.version),
+            getParagraphStyleName(text.language), false, 0));
+      }
+    }
+
+    final List<List<String>> ayat = new ArrayList<>(batchTexts.size());
+    for (final Text text : batchTexts) {
+      ayat.add(source.getAyat(text.language, text.version, batch.surahNumber, batch.from,
+          batch.to - 1));
+    }
+
+    if (batch.text == ALL_TEXTS) {
+      for (long l = batch.from; l < batch.to; l++) {
+        for (int t = 0; t < batchTexts.size(); t++) {
+          final Text text = batchTexts.get(t);
+          final String ayah = ayat.get(t).get((int) (l - batch.from));
+          paragraphs.add(new Paragraph(renderAyah(ayah, l, text),
+              getParagraphStyleName(text.language), false, 1));
+        }
+      }
+    } else {
+      final Text text = batchTexts.get(0);
+      final String styleName = getParagraphStyleName(text.language);
+      final StringBuilder lb = new StringBuilder();
+      for (long l = batch.from; l < batch.to; l++) {
+        lb.append(renderAyah(ayat.get(0).get((int) (l - batch.from)), l, text));
+        lb.append(" ");
+      }
+      paragraphs.add(new Paragraph(lb.toString(), styleName, batch.continued,
+          (int) (batch.to - batch.from)));
+      if (batch.last) {
+        // an empty paragraph separates the block from the next one
+        paragraphs.add(new Paragraph("", styleName, false, 0));
+      }
+    }
+    return Collections.unmodifiableList(paragraphs);
+  }
+
+  /**
+   * Renders an ayah, with its number if the ayat are numbered.
+   *
+   * @param ayah the ayah
+   * @param ayahNumber the ayah number
+   * @param text the text of the ayah
+   * @return the ayah line
+   */
+  private String renderAyah(final String ayah, final long ayahNumber, final Text text) {
+    return numbered ? getAyahLine(ayah, ayahNumber, text.rightToLeft, text.numerals) : ayah;
+  }
+
+  /**
+   * Renders a batch into the cells of a table, a column per text and a row per ayah, with a row
+   * for the Bismillah if the batch has it.
+   *
+   * @param batch the batch
+   * @param source the source of the ayat
+   * @return the cells, by row and column
+   */
+  public Object[][] renderTable(final Batch batch, final AyatSource source) {
+    final int offset = batch.bismillah ? 1 : 0;
+    final Object[][] cells = new Object[(int) (batch.to - batch.from) + offset][texts.size()];
+    for (int c = 0; c < texts.size(); c++) {
+      final Text text = texts.get(c);
+      if (batch.bismillah) {
+        cells[0][c] = source.getBismillah(text.language, text.version);
+      }
+      final List<String> ayat = source.getAyat(text.language, text.version, batch.surahNumber,
+          batch.from, batch.to - 1);
+      for (long l = batch.from; l < batch.to; l++) {
+        final int r = (int) (l - batch.from);
+        cells[r + offset][c] = renderAyah(ayat.get(r), l, text);
+      }
+    }
+    return cells;
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Ayah store that reads a surah from the xml file the first time one of its ayat is requested.
+ *
+ * <p>
+ * A {@link SurahIndex} gives the byte range of every surah, so only the surahs that are used are
+ * read and parsed. The ayat of a surah are kept as {@link CompactText}, one byte per character, and
+ * decoded when they are requested.
+ * </p>
+ *
+ * <p>
+ * A request for an ayah of a surah that can't be read throws an {@link UncheckedIOException}, so a
+ * caller never gets a missing ayah. The failure is not kept: the next request reads the surah
+ * again, so a file that could only be read later is not lost until the office restarts.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+final class LazyAyahStore extends AyahStore {
+
+  private final SurahIndex index;
+  private final AtomicReferenceArray<CompactText> surahs =
+      new AtomicReferenceArray<>(SURAH_COUNT);
+  private final File xmlFile;
+
+  /**
+   * Creates the store.
+   *
+   * @param xmlFile the xml file
+   * @param index the index of the xml file
+   */
+  LazyAyahStore(final File xmlFile, final SurahIndex index) {
+    this.xmlFile = xmlFile;
+    this.index = index;
+  }
+
+  @Override
+  String get(final int index) {
+    final int surano = getSurahOf(index);
+    return getSurah(surano).get(index - getSurahStart(surano));
+  }
+
+  /**
+   * Get all the ayat of a surah, reading the surah if needed.
+   *
+   * @param surano the surah
+   * @return the ayat
+   * @throws UncheckedIOException if the surah can't be read, it is read again on the next request
+   */
+  private CompactText getSurah(final int surano) {
+    final CompactText ayat = surahs.get(surano - 1);
+    if (ayat != null) {
+      return ayat;
+    }
+
+    // two threads may both read the surah, they produce the same result
+    try {
+      surahs.compareAndSet(surano - 1, null, CompactText.encode(readSurah(surano)));
+      return surahs.get(surano - 1);
+    } catch (final XMLStreamException e) {
+      throw new UncheckedIOException(
+          new IOException("Malformed surah " + surano + " of " + xmlFile, e));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads the surah if it isn't read yet, without decoding its ayat.
+   */
+  @Override
+  void load(final int surano) {
+    getSurah(surano);
+  }
+
+  /**
+   * Reads and parses the byte range of one surah.
+   *
+   * @param surano the surah
+   * @return the ayat
+   * @throws XMLStreamException on malformed xml
+   * @throws IOException if the file can't be read or the surah is incomplete
+   */
+  private String[] readSurah(final int surano) throws XMLStreamException, IOException {
+    final byte[] bytes = new byte[(int) (index.getEnd(surano) - index.getStart(surano))];
+    try (RandomAccessFile raf = new RandomAccessFile(xmlFile, "r")) {
+      raf.seek(index.getStart(surano));
+      raf.readFully(bytes);
+    }
+
+    final String[] ayat = new String[(int) QuranReader.getSurahSize(surano)];
+    int ayano = 0;
+    final XMLStreamReader reader = QuranReader.createXmlInputFactory()
+        .createXMLStreamReader(new ByteArrayInputStream(bytes), "UTF-8");
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT
+            && "ayat".equals(reader.getLocalName())) {
+          if (ayano == ayat.length) {
+            throw new IOException("Too many ayat in surah " + surano + " of " + xmlFile);
+          }
+          ayat[ayano++] = QuranReader.getAyahText(reader);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    if (ayano != ayat.length) {
+      throw new IOException("Missing ayat in surah " + surano + " of " + xmlFile);
+    }
+    return ayat;
+  }
+}
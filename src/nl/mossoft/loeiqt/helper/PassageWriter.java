@@ -0,0 +1,159 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import com.sun.star.beans.PropertyVetoException;
+import com.sun.star.beans.UnknownPropertyException;
+import com.sun.star.lang.WrappedTargetException;
+import com.sun.star.text.ControlCharacter;
+import com.sun.star.text.XParagraphCursor;
+import com.sun.star.text.XText;
+import com.sun.star.text.XTextCursor;
+import com.sun.star.uno.XComponentContext;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLStreamException;
+import nl.mossoft.loeiqt.helper.InsertionPlan.Paragraph;
+
+/**
+ * Writes the batches of paragraphs of a passage before a paragraph of a text.
+ *
+ * <p>
+ * A batch is written as a {@link FlatOdfFragment} and inserted with one call, so the number of
+ * calls to the office depends on the number of batches and not on the number of ayat. If a
+ * fragment can't be inserted, this and the following batches are written paragraph by paragraph.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class PassageWriter {
+
+  private final XComponentContext context;
+  private boolean fragments = true;
+  private final XTextCursor insertCursor;
+  private final XParagraphCursor paragraphCursor;
+  private final Consumer<FlatOdfFragment> styles;
+  private final XText text;
+
+  /**
+   * Constructor.
+   *
+   * @param context the component context
+   * @param text the text
+   * @param paragraphCursor the cursor at the start of the paragraph to write before
+   * @param styles defines the paragraph styles of the batches in a fragment
+   */
+  public PassageWriter(final XComponentContext context, final XText text,
+      final XParagraphCursor paragraphCursor, final Consumer<FlatOdfFragment> styles) {
+    this.context = context;
+    this.text = text;
+    this.paragraphCursor = paragraphCursor;
+    this.styles = styles;
+    this.insertCursor = text.createTextCursorByRange(paragraphCursor.getStart());
+  }
+
+  /**
+   * Writes a batch of paragraphs at the end of the passage.
+   *
+   * @param batch the paragraphs
+   * @throws UnknownPropertyException if the cursor has no paragraph style
+   * @throws PropertyVetoException if the paragraph style can't be set
+   * @throws WrappedTargetException if the paragraph style can't be set
+   */
+  public void write(final List<Paragraph> batch)
+      throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+    insertCursor.gotoRange(paragraphCursor.getStart(), false);
+    insertCursor.goLeft((short) 1, false);
+    if (fragments) {
+      fragments = writeAsFragment(batch);
+    }
+    if (!fragments) {
+      writeParagraphs(batch);
+    }
+  }
+
+  /**
+   * Write a batch of paragraphs as a flat ODF fragment, inserted with one call.
+   *
+   * @param batch the paragraphs
+   * @return true if the fragment was inserted, if not the text is left as it was
+   */
+  private boolean writeAsFragment(final List<Paragraph> batch)
+      throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+    final FlatOdfFragment fragment = new FlatOdfFragment();
+    styles.accept(fragment);
+    for (final Paragraph paragraph : batch) {
+      fragment.addParagraph(paragraph.getText(), paragraph.getStyleName());
+    }
+
+    final File file;
+    try {
+      file = fragment.writeTempFile();
+    } catch (IOException | XMLStreamException e) {
+      e.printStackTrace();
+      return false;
+    }
+    try {
+      final String url = DialogHelper.convertToUrl(context, file);
+      if (url == null) {
+        return false;
+      }
+      // the first paragraph of the fragment is merged into the paragraph it is inserted in, that
+      // is the paragraph it continues or a new one
+      final boolean newParagraph = !batch.get(0).isContinued();
+      if (newParagraph) {
+        text.insertControlCharacter(insertCursor, ControlCharacter.PARAGRAPH_BREAK, false);
+        new DocumentHelper.PropertyBatch(insertCursor)
+            .set("ParaStyleName", batch.get(0).getStyleName()).apply();
+      }
+      if (DocumentHelper.insertDocument(insertCursor, url, FlatOdfFragment.FILTER_NAME)) {
+        return true;
+      }
+      if (newParagraph) {
+        // remove the new paragraph again, writing the batch without a fragment starts its own
+        insertCursor.goLeft((short) 1, true);
+        insertCursor.setString("");
+      }
+      return false;
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Write a batch of paragraphs with the cursor, one paragraph at a time.
+   *
+   * @param batch the paragraphs
+   */
+  private void writeParagraphs(final List<Paragraph> batch)
+      throws UnknownPropertyException, PropertyVetoException, WrappedTargetException {
+    final DocumentHelper.PropertyBatch cursorProperties =
+        new DocumentHelper.PropertyBatch(insertCursor);
+    for (final Paragraph paragraph : batch) {
+      if (!paragraph.isContinued()) {
+        text.insertControlCharacter(insertCursor, ControlCharacter.PARAGRAPH_BREAK, false);
+        // the new paragraph has the style of the previous one, the batch skips setting it again
+        cursorProperties.set("ParaStyleName", paragraph.getStyleName()).apply();
+      }
+      text.insertString(insertCursor, paragraph.getText(), false);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import com.sun.star.awt.XProgressBar;
+
+/**
+ * Reports the progress of writing ayat to a progress bar.
+ *
+ * <p>
+ * Counting the written ayat is cheap, but every update of the progress bar is a call to the office
+ * that repaints it. The progress bar is only updated when the percentage changes, and not more
+ * often than once per interval. The last update is always published by {@link #finish()}.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class ProgressReporter {
+
+  public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+  private long count;
+  private final long intervalMillis;
+  private long lastPublished;
+  private int lastPercentage;
+  private final XProgressBar progressBar;
+  private final long started;
+  private final long total;
+
+  /**
+   * Constructor.
+   *
+   * @param progressBar the progress bar, with a range of 0 to 100, or null to only measure
+   * @param total the number of ayat to write
+   */
+  public ProgressReporter(final XProgressBar progressBar, final long total) {
+    this(progressBar, total, DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param progressBar the progress bar, with a range of 0 to 100, or null to only measure
+   * @param total the number of ayat to write
+   * @param intervalMillis the minimum time between updates of the progress bar
+   */
+  public ProgressReporter(final XProgressBar progressBar, final long total,
+      final long intervalMillis) {
+    this.progressBar = progressBar;
+    this.total = total;
+    this.intervalMillis = intervalMillis;
+    this.started = System.nanoTime();
+    this.lastPublished = started;
+  }
+
+  /**
+   * Adds written ayat and updates the progress bar if it is time to.
+   *
+   * @param ayat the number of ayat written
+   */
+  public void add(final long ayat) {
+    count += ayat;
+    final int percentage = getPercentage();
+    if (percentage == lastPercentage) {
+      return;
+    }
+    final long now = System.nanoTime();
+    if (now - lastPublished >= intervalMillis * 1_000_000L) {
+      publish(percentage);
+      lastPublished = now;
+    }
+  }
+
+  /**
+   * Updates the progress bar with the final progress.
+   */
+  public void finish() {
+    publish(getPercentage());
+  }
+
+  /**
+   * Returns the number of ayat per second written so far.
+   *
+   * @return ayat per second
+   */
+  public double getAyatPerSecond() {
+    final long elapsed = System.nanoTime() - started;
+    return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+  }
+
+  /**
+   * Returns the number of ayat written so far.
+   *
+   * @return the number of ayat
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the time since the reporter was created.
+   *
+   * @return the elapsed time in milliseconds
+   */
+  public long getElapsedMillis() {
+    return (System.nanoTime() - started) / 1_000_000L;
+  }
+
+  /**
+   * Returns the progress as a percentage of the total.
+   *
+   * @return the percentage, 0 to 100
+   */
+  public int getPercentage() {
+    if (total <= 0) {
+      return 100;
+    }
+    return (int) (100 * Math.min(count, total) / total);
+  }
+
+  /**
+   * Updates the progress bar.
+   *
+   * @param percentage the percentage
+   */
+  private void publish(final int percentage) {
+    lastPercentage = percentage;
+    if (progressBar != null) {
+      progressBar.setValue(percentage);
+    }
+  }
+}
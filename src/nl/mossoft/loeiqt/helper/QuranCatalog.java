@@ -0,0 +1,266 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import com.sun.star.uno.XComponentContext;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Catalog of the Qur'an text versions that are installed.
+ *
+ * <p>
+ * Only the attributes of the quran root element of every file are read. The catalog is kept in
+ * memory and read again when the modification time of the directory changes, so when a file is
+ * added, removed or renamed.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class QuranCatalog {
+
+  /**
+   * A Qur'an text version of the catalog.
+   */
+  public static final class Entry {
+
+    private final String date;
+    private final String language;
+    private final String source;
+    private final String title;
+    private final String translator;
+    private final String version;
+
+    private Entry(final String language, final String version, final String title,
+        final String translator, final String date, final String source) {
+      this.language = language;
+      this.version = version;
+      this.title = title;
+      this.translator = translator;
+      this.date = date;
+      this.source = source;
+    }
+
+    /**
+     * Returns the date of the text version, as yyyymmdd.
+     *
+     * @return the date or null if unknown
+     */
+    public String getDate() {
+      return date;
+    }
+
+    /**
+     * Returns the language of the text version.
+     *
+     * @return the language
+     */
+    public String getLanguage() {
+      return language;
+    }
+
+    /**
+     * Returns the source of the text version.
+     *
+     * @return the source or null if unknown
+     */
+    public String getSource() {
+      return source;
+    }
+
+    /**
+     * Returns the title of the text version, the version attribute of the file.
+     *
+     * @return the title
+     */
+    public String getTitle() {
+      return title;
+    }
+
+    /**
+     * Returns the translator of the text version.
+     *
+     * @return the translator or null if unknown
+     */
+    public String getTranslator() {
+      return translator;
+    }
+
+    /**
+     * Returns the version as used to read the text, taken from the file name because the version
+     * attributes of the files are not unique.
+     *
+     * @return the version
+     */
+    public String getVersion() {
+      return version;
+    }
+  }
+
+  private static final String FILE_PREFIX = "QuranText.";
+  private static final String FILE_SUFFIX = ".xml";
+
+  private static volatile QuranCatalog instance;
+
+  /**
+   * Returns the catalog of the installed text versions, reading it if the directory has changed.
+   *
+   * @param context the component context
+   * @return the catalog, empty if the directory can't be found
+   */
+  public static QuranCatalog get(final XComponentContext context) {
+    final File dir = FileHelper.getFilePath("resources/quran", context);
+    if (dir == null) {
+      return new QuranCatalog(null, 0, Collections.<Entry>emptyList());
+    }
+    return get(dir);
+  }
+
+  /**
+   * Returns the catalog of a directory, reading it if the directory has changed.
+   *
+   * @param dir the directory with the Qur'an xml files
+   * @return the catalog
+   */
+  static QuranCatalog get(final File dir) {
+    final QuranCatalog catalog = instance;
+    final long modified = dir.lastModified();
+    if (catalog != null && dir.equals(catalog.dir) && catalog.modified == modified) {
+      return catalog;
+    }
+    final QuranCatalog newCatalog = new QuranCatalog(dir, modified, read(dir));
+    instance = newCatalog;
+    return newCatalog;
+  }
+
+  /**
+   * Reads the root attributes of all the Qur'an xml files in a directory.
+   *
+   * @param dir the directory
+   * @return the entries, sorted by language and version
+   */
+  private static List<Entry> read(final File dir) {
+    final File[] files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX)
+        && name.toLowerCase().endsWith(FILE_SUFFIX));
+    final List<Entry> entries = new ArrayList<>();
+    if (files == null) {
+      return entries;
+    }
+    for (final File file : files) {
+      try {
+        final Entry entry = readEntry(file);
+        if (entry != null) {
+          entries.add(entry);
+        }
+      } catch (XMLStreamException | IOException e) {
+        e.printStackTrace();
+      }
+    }
+    entries.sort((e1, e2) -> {
+      final int c = e1.getLanguage().compareTo(e2.getLanguage());
+      return c != 0 ? c : e1.getVersion().compareTo(e2.getVersion());
+    });
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Reads the root attributes of a Qur'an xml file.
+   *
+   * @param file the file
+   * @return the entry or null if the file is not a Qur'an text that matches its name
+   * @throws XMLStreamException on malformed xml
+   * @throws IOException if the file can't be read
+   */
+  private static Entry readEntry(final File file) throws XMLStreamException, IOException {
+    final String name = file.getName();
+    final String[] parts =
+        name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()).split("[.]");
+    if (parts.length != 2) {
+      return null;
+    }
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1024)) {
+      final XMLStreamReader reader = QuranReader.createXmlInputFactory().createXMLStreamReader(in);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          // only the root element is needed
+          final String language = reader.getAttributeValue(null, "language");
+          if (!"quran".equals(reader.getLocalName()) || !parts[0].equals(language)) {
+            return null;
+          }
+          final String title = reader.getAttributeValue(null, "version");
+          return new Entry(language, parts[1], title == null ? parts[1].replace("_", " ") : title,
+              reader.getAttributeValue(null, "translator"), reader.getAttributeValue(null, "date"),
+              reader.getAttributeValue(null, "source"));
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return null;
+  }
+
+  private final File dir;
+  private final List<Entry> entries;
+  private final long modified;
+
+  private QuranCatalog(final File dir, final long modified, final List<Entry> entries) {
+    this.dir = dir;
+    this.modified = modified;
+    this.entries = entries;
+  }
+
+  /**
+   * Returns all the text versions, sorted by language and version.
+   *
+   * @return the entries
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Returns the text versions of a language, or of all the other languages.
+   *
+   * @param language the language
+   * @param include true for the versions of the language, false for those of the other languages
+   * @return the entries, sorted by language and version
+   */
+  public List<Entry> getEntries(final String language, final boolean include) {
+    final List<Entry> selected = new ArrayList<>();
+    for (final Entry entry : entries) {
+      if (entry.getLanguage().equals(language) == include) {
+        selected.add(entry);
+      }
+    }
+    return selected;
+  }
+}
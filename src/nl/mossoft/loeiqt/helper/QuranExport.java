@@ -0,0 +1,762 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Exports a passage to an ODF text, HTML or plain text file, without LibreOffice.
+ *
+ * <p>
+ * The passage is planned and rendered by the same {@link InsertionPlan} as the dialog uses, from
+ * the same Qur'an files, so the text, the numbering and the paragraph styles are the same as when
+ * it is inserted by the extension. The versions are read in parallel, and with --separate every
+ * version is written to its own file in parallel.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public final class QuranExport {
+
+  /**
+   * A document being exported, in one of the formats.
+   */
+  private interface Document {
+
+    /**
+     * Adds a named paragraph style for the surah headings.
+     *
+     * @param name the name of the style
+     * @param pageBreakBefore true to start every heading on a new page
+     */
+    void addHeadingStyle(String name, boolean pageBreakBefore);
+
+    /**
+     * Adds a paragraph.
+     *
+     * @param text the text
+     * @param styleName the name of the paragraph style
+     */
+    void addParagraph(String text, String styleName);
+
+    /**
+     * Adds a named paragraph style.
+     *
+     * @param name the name of the style
+     * @param rightToLeft true for right to left paragraphs
+     * @param fontName the font or null
+     * @param fontSize the font size in points, or 0
+     */
+    void addParagraphStyle(String name, boolean rightToLeft, String fontName, double fontSize);
+
+    /**
+     * Adds a table.
+     *
+     * @param cells the cells, by row and column
+     * @param columnStyles the names of the paragraph styles of the columns
+     */
+    void addTable(Object[][] cells, String[] columnStyles);
+
+    /**
+     * Writes the document.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the document can't be written
+     * @throws XMLStreamException if the document can't be written
+     */
+    void write(OutputStream out) throws IOException, XMLStreamException;
+  }
+
+  /**
+   * A document written as HTML, a paragraph style becomes a class.
+   */
+  private static final class HtmlDocument implements Document {
+
+    private final StringBuilder body = new StringBuilder();
+    private final StringBuilder css = new StringBuilder();
+    private final String title;
+
+    private HtmlDocument(final String title) {
+      this.title = title;
+    }
+
+    @Override
+    public void addHeadingStyle(final String name, final boolean pageBreakBefore) {
+      css.append('.').append(getClassName(name))
+          .append(" { font-weight: bold; text-align: center;");
+      if (pageBreakBefore) {
+        css.append(" page-break-before: always;");
+      }
+      css.append(" }\n");
+    }
+
+    @Override
+    public void addParagraph(final String text, final String styleName) {
+      final String tag = InsertionPlan.STYLE_HEADING.equals(styleName) ? "h2" : "p";
+      body.append('<').append(tag).append(" class=\"").append(getClassName(styleName))
+          .append("\" dir=\"auto\">").append(escape(text)).append("</").append(tag)
+          .append(">\n");
+    }
+
+    @Override
+    public void addParagraphStyle(final String name, final boolean rightToLeft,
+        final String fontName, final double fontSize) {
+      css.append('.').append(getClassName(name)).append(" {");
+      if (fontName != null && !fontName.isEmpty()) {
+        css.append(" font-family: '").append(fontName.replace("'", "")).append("';");
+      }
+      if (fontSize > 0) {
+        css.append(" font-size: ").append(fontSize).append("pt;");
+      }
+      css.append(" }\n");
+    }
+
+    @Override
+    public void addTable(final Object[][] cells, final String[] columnStyles) {
+      body.append("<table>\n");
+      for (final Object[] row : cells) {
+        body.append("<tr>");
+        for (int c = 0; c < columnStyles.length; c++) {
+          body.append("<td class=\"").append(getClassName(columnStyles[c]))
+              .append("\" dir=\"auto\">").append(escape(row[c] == null ? "" : row[c].toString()))
+              .append("</td>");
+        }
+        body.append("</tr>\n");
+      }
+      body.append("</table>\n");
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException {
+      final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+      writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>");
+      writer.write(escape(title));
+      writer.write("</title>\n<style>\n");
+      writer.write(css.toString());
+      writer.write("</style>\n</head>\n<body>\n");
+      writer.write(body.toString());
+      writer.write("</body>\n</html>\n");
+      writer.flush();
+    }
+  }
+
+  /**
+   * A document written as an ODF text package.
+   */
+  private static final class OdtDocument implements Document {
+
+    private final FlatOdfFragment fragment = new FlatOdfFragment();
+
+    @Override
+    public void addHeadingStyle(final String name, final boolean pageBreakBefore) {
+      fragment.addHeadingStyle(name, pageBreakBefore);
+    }
+
+    @Override
+    public void addParagraph(final String text, final String styleName) {
+      fragment.addParagraph(text, styleName);
+    }
+
+    @Override
+    public void addParagraphStyle(final String name, final boolean rightToLeft,
+        final String fontName, final double fontSize) {
+      fragment.addParagraphStyle(name, rightToLeft, fontName, fontSize);
+    }
+
+    @Override
+    public void addTable(final Object[][] cells, final String[] columnStyles) {
+      fragment.addTable(cells, columnStyles);
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException, XMLStreamException {
+      fragment.writePackage(out);
+    }
+  }
+
+  /**
+   * A document written as plain text, a line per paragraph and a tab between the cells of a
+   * table row.
+   */
+  private static final class TextDocument implements Document {
+
+    private final StringBuilder text = new StringBuilder();
+
+    @Override
+    public void addHeadingStyle(final String name, final boolean pageBreakBefore) {
+      // plain text has no styles
+    }
+
+    @Override
+    public void addParagraph(final String paragraph, final String styleName) {
+      text.append(paragraph).append('\n');
+    }
+
+    @Override
+    public void addParagraphStyle(final String name, final boolean rightToLeft,
+        final String fontName, final double fontSize) {
+      // plain text has no styles
+    }
+
+    @Override
+    public void addTable(final Object[][] cells, final String[] columnStyles) {
+      for (final Object[] row : cells) {
+        for (int c = 0; c < columnStyles.length; c++) {
+          if (c > 0) {
+            text.append('\t');
+          }
+          text.append(row[c] == null ? "" : row[c].toString());
+        }
+        text.append('\n');
+      }
+    }
+
+    @Override
+    public void write(final OutputStream out) throws IOException {
+      out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static final String ARABIC = "Arabic";
+  private static final String TRANSLITERATION = "Transliteration";
+  private static final String USAGE = String.join("\n",
+      "Usage: java -cp bin nl.mossoft.loeiqt.helper.QuranExport [options] <references>"
+          + " <language.version>...",
+      "",
+      "  <references>  comma separated surahs and ayat, like 1,2:255,3:1-20,78-114",
+      "  <version>     a version like Arabic.Medina or English.Sahih_International, or all",
+      "",
+      "Options:",
+      "  --dir <dir>             the Qur'an xml files, default resources/quran",
+      "  --output <file>         the file to write, or the directory with --separate",
+      "  --format odt|html|txt   default from the extension of the output, else odt",
+      "  --layout block|line-by-line|table  default line-by-line",
+      "  --no-numbers            don't number the ayat",
+      "  --page-break            start every surah heading on a new page",
+      "  --arabic-font <name>    the font of the Arabic text, also for its ayat numbers",
+      "  --arabic-size <points>  the font size of the Arabic text",
+      "  --font <name>           the font of the translation and transliteration",
+      "  --size <points>         the font size of the translation and transliteration",
+      "  --separate              write every version to its own file, in parallel");
+
+  /**
+   * Adds the pending paragraph to a document, if there is one.
+   *
+   * @param document the document
+   * @param pending the text of the paragraph, it is cleared
+   * @param styleName the name of the paragraph style, or null if there is no pending paragraph
+   * @return null, as there is no pending paragraph anymore
+   */
+  private static String addPending(final Document document, final StringBuilder pending,
+      final String styleName) {
+    if (styleName != null) {
+      document.addParagraph(pending.toString(), styleName);
+      pending.setLength(0);
+    }
+    return null;
+  }
+
+  /**
+   * Creates an empty document of a format.
+   *
+   * @param format odt, html or txt
+   * @param title the title of the document
+   * @return the document
+   */
+  private static Document createDocument(final String format, final String title) {
+    switch (format) {
+      case "html":
+        return new HtmlDocument(title);
+      case "txt":
+        return new TextDocument();
+      default:
+        return new OdtDocument();
+    }
+  }
+
+  /**
+   * Escapes text for HTML.
+   *
+   * @param text the text
+   * @return the escaped text
+   */
+  private static String escape(final String text) {
+    final StringBuilder escaped = new StringBuilder(text.length() + 16);
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          escaped.append("&amp;");
+          break;
+        case '<':
+          escaped.append("&lt;");
+          break;
+        case '>':
+          escaped.append("&gt;");
+          break;
+        case '"':
+          escaped.append("&quot;");
+          break;
+        default:
+          escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  /**
+   * Returns the CSS class of a paragraph style, Quran Arabic becomes quran-arabic for example.
+   *
+   * @param styleName the style name
+   * @return the class name
+   */
+  private static String getClassName(final String styleName) {
+    return styleName.toLowerCase(Locale.ROOT).replace(' ', '-');
+  }
+
+  /**
+   * Returns the file extension of a file name.
+   *
+   * @param name the file name
+   * @return the extension in lower case, or an empty string
+   */
+  private static String getExtension(final String name) {
+    final int dot = name.lastIndexOf('.');
+    return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the role of a language in a passage: Arabic, translation or transliteration. A
+   * passage has at most one text per role, as in the dialog.
+   *
+   * @param language the language
+   * @return the role, the name of its paragraph style
+   */
+  private static String getRole(final String language) {
+    return InsertionPlan.getParagraphStyleName(language);
+  }
+
+  /**
+   * Command line: exports a passage.
+   *
+   * @param args the options, the references and the versions
+   */
+  public static void main(final String[] args) {
+    final QuranExport export = new QuranExport();
+    final List<String> versions = new ArrayList<>();
+    String references = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        final String arg = args[i];
+        if (!arg.startsWith("--")) {
+          if (references == null) {
+            references = arg;
+          } else {
+            versions.add(arg);
+          }
+          continue;
+        }
+        switch (arg) {
+          case "--no-numbers":
+            export.numbered = false;
+            continue;
+          case "--page-break":
+            export.pageBreak = true;
+            continue;
+          case "--separate":
+            export.separate = true;
+            continue;
+          default:
+            break;
+        }
+        if (i + 1 >= args.length) {
+          throw new IllegalArgumentException("Missing value of " + arg);
+        }
+        final String value = args[++i];
+        switch (arg) {
+          case "--arabic-font":
+            export.arabicFontName = value;
+            break;
+          case "--arabic-size":
+            export.arabicFontSize = Double.parseDouble(value);
+            break;
+          case "--dir":
+            export.dir = new File(value);
+            break;
+          case "--font":
+            export.fontName = value;
+            break;
+          case "--format":
+            export.format = value.toLowerCase(Locale.ROOT);
+            break;
+          case "--layout":
+            export.layout = parseLayout(value);
+            break;
+          case "--output":
+            export.output = new File(value);
+            break;
+          case "--size":
+            export.fontSize = Double.parseDouble(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + arg);
+        }
+      }
+      if (references == null || versions.isEmpty()) {
+        throw new IllegalArgumentException("No references or versions");
+      }
+      export.references = parseReferences(references);
+      export.versions = export.resolveVersions(versions);
+    } catch (final IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+    System.exit(export.run() ? 0 : 1);
+  }
+
+  /**
+   * Parses a layout.
+   *
+   * @param value block, line-by-line or table
+   * @return the layout
+   */
+  private static InsertionPlan.Layout parseLayout(final String value) {
+    switch (value) {
+      case "block":
+        return InsertionPlan.Layout.BLOCK;
+      case "line-by-line":
+        return InsertionPlan.Layout.LINE_BY_LINE;
+      case "table":
+        return InsertionPlan.Layout.TABLE;
+      default:
+        throw new IllegalArgumentException("Unknown layout " + value);
+    }
+  }
+
+  /**
+   * Parses a comma separated list of references: a surah (2), a range of surahs (78-114), an ayah
+   * (2:255) or a range of ayat of a surah (3:1-20).
+   *
+   * @param value the references
+   * @return the references as first surah, last surah, first ayah and last ayah, the ayat 0 for
+   *         all ayat
+   */
+  private static List<long[]> parseReferences(final String value) {
+    final List<long[]> parsed = new ArrayList<>();
+    for (final String reference : value.split(",")) {
+      try {
+        final String[] parts = reference.trim().split(":");
+        final String[] surahs = parts[0].split("-");
+        final long first = Long.parseLong(surahs[0].trim());
+        final long last = surahs.length > 1 ? Long.parseLong(surahs[1].trim()) : first;
+        if (first < 1 || last > 114 || first > last || parts.length > 2
+            || parts.length == 2 && first != last) {
+          throw new IllegalArgumentException("Invalid reference " + reference);
+        }
+        long from = 0;
+        long to = 0;
+        if (parts.length == 2) {
+          final String[] ayat = parts[1].split("-");
+          from = Long.parseLong(ayat[0].trim());
+          to = ayat.length > 1 ? Long.parseLong(ayat[1].trim()) : from;
+          if (from < 1 || to > QuranReader.getSurahSize((int) first) || from > to) {
+            throw new IllegalArgumentException("Invalid ayat in " + reference);
+          }
+        }
+        parsed.add(new long[] {first, last, from, to});
+      } catch (final NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid reference " + reference);
+      }
+    }
+    return parsed;
+  }
+
+  private String arabicFontName;
+  private double arabicFontSize;
+  private File dir = new File("resources/quran");
+  private String fontName;
+  private double fontSize;
+  private String format;
+  private InsertionPlan.Layout layout = InsertionPlan.Layout.LINE_BY_LINE;
+  private boolean numbered = true;
+  private File output;
+  private boolean pageBreak;
+  private final Map<String, CompletableFuture<QuranReader>> readers = new LinkedHashMap<>();
+  private List<long[]> references;
+  private boolean separate;
+  private List<String[]> versions;
+
+  private QuranExport() {}
+
+  /**
+   * Exports the references of some versions to a file.
+   *
+   * @param exportVersions the versions, as language and version
+   * @param source the source of the ayat
+   * @param file the file to write
+   * @param fileFormat odt, html or txt
+   * @throws IOException if the file can't be written
+   * @throws XMLStreamException if the file can't be written
+   */
+  private void export(final List<String[]> exportVersions, final InsertionPlan.AyatSource source,
+      final File file, final String fileFormat) throws IOException, XMLStreamException {
+    final Document document = createDocument(fileFormat, file.getName());
+    boolean headings = false;
+    final List<InsertionPlan> plans = new ArrayList<>();
+    for (final long[] reference : references) {
+      final InsertionPlan.Builder builder = InsertionPlan.builder()
+          .surahs((int) reference[0], (int) reference[1]).layout(layout).numbered(numbered);
+      if (reference[2] > 0) {
+        builder.ayat(reference[2], reference[3]);
+      }
+      for (final String[] version : exportVersions) {
+        builder.text(version[0], version[1], getFontName(version[0]));
+      }
+      final InsertionPlan plan = builder.build();
+      headings |= plan.hasHeadings();
+      plans.add(plan);
+    }
+
+    for (final String[] version : exportVersions) {
+      document.addParagraphStyle(InsertionPlan.getParagraphStyleName(version[0]),
+          InsertionPlan.isRightToLeft(version[0]), getFontName(version[0]),
+          ARABIC.equals(version[0]) ? arabicFontSize : fontSize);
+    }
+    if (headings) {
+      document.addHeadingStyle(InsertionPlan.STYLE_HEADING, pageBreak);
+    }
+
+    // a paragraph of a block is continued in the next batches, it is added when it is complete
+    final StringBuilder pending = new StringBuilder();
+    String pendingStyle = null;
+    for (final InsertionPlan plan : plans) {
+      for (final InsertionPlan.Batch batch : plan.getBatches()) {
+        if (plan.getLayout() == InsertionPlan.Layout.TABLE) {
+          pendingStyle = addPending(document, pending, pendingStyle);
+          if (batch.hasHeading()) {
+            document.addParagraph(InsertionPlan.getSurahHeading(batch.getSurahNumber()),
+                InsertionPlan.STYLE_HEADING);
+          }
+          document.addTable(plan.renderTable(batch, source), plan.getColumnStyles());
+        } else {
+          for (final InsertionPlan.Paragraph paragraph : plan.render(batch, source)) {
+            if (!paragraph.isContinued()) {
+              pendingStyle = addPending(document, pending, pendingStyle);
+              pendingStyle = paragraph.getStyleName();
+            }
+            pending.append(paragraph.getText());
+          }
+        }
+      }
+    }
+    addPending(document, pending, pendingStyle);
+
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      document.write(out);
+    }
+  }
+
+  /**
+   * Returns the font of the text of a language.
+   *
+   * @param language the language
+   * @return the font or null
+   */
+  private String getFontName(final String language) {
+    return ARABIC.equals(language) ? arabicFontName : fontName;
+  }
+
+  /**
+   * Returns the format to write: the selected one, or else the one of the output file name.
+   *
+   * @return odt, html or txt
+   */
+  private String getFormat() {
+    final String selected = format != null ? format
+        : output != null && !separate ? getExtension(output.getName()) : "odt";
+    switch (selected) {
+      case "htm":
+      case "html":
+        return "html";
+      case "txt":
+        return "txt";
+      default:
+        return "odt";
+    }
+  }
+
+  /**
+   * Returns the reader of a version, waiting until it is read.
+   *
+   * @param language the language
+   * @param version the version
+   * @return the reader
+   */
+  private QuranReader getReader(final String language, final String version) {
+    return readers.get(language + "." + version).join();
+  }
+
+  /**
+   * Returns the versions to export: the given ones, or all versions for all.
+   *
+   * @param given the given versions, as language.version
+   * @return the versions as language and version
+   */
+  private List<String[]> resolveVersions(final List<String> given) {
+    final List<String[]> resolved = new ArrayList<>();
+    for (final String version : given) {
+      if ("all".equals(version)) {
+        if (!dir.isDirectory()) {
+          throw new IllegalArgumentException("Not a directory: " + dir);
+        }
+        for (final QuranCatalog.Entry entry : QuranCatalog.get(dir).getEntries()) {
+          resolved.add(new String[] {entry.getLanguage(), entry.getVersion()});
+        }
+        continue;
+      }
+      final int dot = version.indexOf('.');
+      if (dot <= 0 || dot == version.length() - 1) {
+        throw new IllegalArgumentException("Invalid version " + version);
+      }
+      resolved.add(new String[] {version.substring(0, dot), version.substring(dot + 1)});
+    }
+    if (!separate) {
+      // a passage has one text per paragraph style, as in the dialog
+      final Map<String, String> roles = new LinkedHashMap<>();
+      for (final String[] version : resolved) {
+        final String other = roles.put(getRole(version[0]), version[0] + "." + version[1]);
+        if (other != null) {
+          throw new IllegalArgumentException("Only one translation and one transliteration can be"
+              + " exported together, use --separate for " + other);
+        }
+      }
+    }
+    return resolved;
+  }
+
+  /**
+   * Reads the versions in parallel and exports them, to one file or to a file per version.
+   *
+   * @return true if all files are written
+   */
+  private boolean run() {
+    final long started = System.nanoTime();
+    final String fileFormat = getFormat();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    try {
+      for (final String[] version : versions) {
+        final File file = new File(dir, "QuranText." + version[0] + "." + version[1] + ".xml");
+        readers.put(version[0] + "." + version[1],
+            CompletableFuture.supplyAsync(() -> new QuranReader(file), executor));
+      }
+      final InsertionPlan.AyatSource source = new InsertionPlan.AyatSource() {
+
+        @Override
+        public List<String> getAyat(final String language, final String version,
+            final int surahNumber, final long from, final long to) {
+          return getReader(language, version).getAyatFromToOfSuraNo(surahNumber, from, to);
+        }
+
+        @Override
+        public String getBismillah(final String language, final String version) {
+          return getReader(language, version).getBismillah();
+        }
+      };
+
+      final List<CompletableFuture<Boolean>> exports = new ArrayList<>();
+      if (separate) {
+        final File outputDir = output != null ? output : new File(".");
+        for (final String[] version : versions) {
+          final File file = new File(outputDir,
+              "QuranText." + version[0] + "." + version[1] + "." + fileFormat);
+          final List<String[]> single = new ArrayList<>();
+          single.add(version);
+          exports.add(CompletableFuture.supplyAsync(
+              () -> runExport(single, source, file, fileFormat), executor));
+        }
+      } else {
+        final File file = output != null ? output : new File("quran." + fileFormat);
+        exports.add(CompletableFuture.completedFuture(
+            runExport(versions, source, file, fileFormat)));
+      }
+
+      boolean completed = true;
+      for (final CompletableFuture<Boolean> export : exports) {
+        completed &= export.join();
+      }
+      System.out.println(String.format(Locale.ROOT, "Exported %d file(s) in %d ms",
+          exports.size(), (System.nanoTime() - started) / 1_000_000L));
+      return completed;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Exports to a file and reports the result.
+   *
+   * @param exportVersions the versions, as language and version
+   * @param source the source of the ayat
+   * @param file the file to write
+   * @param fileFormat odt, html or txt
+   * @return true if the file is written
+   */
+  private boolean runExport(final List<String[]> exportVersions,
+      final InsertionPlan.AyatSource source, final File file, final String fileFormat) {
+    for (final String[] version : exportVersions) {
+      if (!getReader(version[0], version[1]).isLoaded()) {
+        System.err.println("Skipped " + file.getName() + ": " + version[0] + "." + version[1]
+            + " can't be read from " + dir);
+        return false;
+      }
+    }
+    try {
+      export(exportVersions, source, file, fileFormat);
+      System.out.println(file.getPath());
+      return true;
+    } catch (IOException | XMLStreamException | RuntimeException e) {
+      e.printStackTrace();
+      file.delete();
+      return false;
+    }
+  }
+}
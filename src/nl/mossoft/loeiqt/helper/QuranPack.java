@@ -0,0 +1,274 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Precompiled binary form of a Qur'an xml file, memory-mapped at runtime.
+ *
+ * <p>
+ * A pack contains a header, the start index of every surah, the byte offset of every ayah and a
+ * UTF-8 text blob. It is read with {@link FileChannel#map}, so only the ayat that are requested are
+ * decoded and the pages are shared through the page cache of the OS.
+ * </p>
+ *
+ * <pre>
+ * int    magic          'QLOP'
+ * int    format version 3
+ * int    surah count    114
+ * int    ayat count     6236
+ * long   source size    the size of the xml file the pack was built from
+ * long   source CRC     the CRC-32 of the xml file the pack was built from
+ * int[]  surah start    surah count + 1 ayah indexes
+ * int[]  ayah offset    ayat count + 1 byte offsets into the blob
+ * byte[] blob           UTF-8 text of all the ayat
+ * </pre>
+ *
+ * <p>
+ * The packs are checked in next to the xml files and packaged with the extension. Build them again
+ * whenever an xml file changes, with:
+ * {@code java -cp bin nl.mossoft.loeiqt.helper.QuranPack resources/quran}. A pack is only used if
+ * the size and the CRC-32 of the xml file are the ones it was built from, so a correction that
+ * keeps the size of the file, like one diacritic for another, isn't missed.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class QuranPack {
+
+  /**
+   * Ayah store that decodes the ayat from a mapped pack.
+   */
+  private static final class MappedAyahStore extends AyahStore {
+
+    private final int blobStart;
+    private final ByteBuffer buffer;
+    private final int offsetStart;
+
+    private MappedAyahStore(final ByteBuffer buffer, final int offsetStart, final int blobStart) {
+      this.buffer = buffer;
+      this.offsetStart = offsetStart;
+      this.blobStart = blobStart;
+    }
+
+    @Override
+    String get(final int index) {
+      final int from = buffer.getInt(offsetStart + 4 * index);
+      final int to = buffer.getInt(offsetStart + 4 * (index + 1));
+
+      // duplicate, the position of the shared buffer must not change
+      final ByteBuffer ayah = buffer.duplicate();
+      ayah.limit(blobStart + to);
+      ayah.position(blobStart + from);
+      return StandardCharsets.UTF_8.decode(ayah).toString();
+    }
+
+    /**
+     * Collects the characters from the UTF-8 bytes of all ayat, without decoding them to strings.
+     */
+    @Override
+    BitSet getCodePoints() {
+      final BitSet used = new BitSet(0x10000);
+      final int end = blobStart + buffer.getInt(offsetStart + 4 * getAyatCount());
+      int pos = blobStart;
+      while (pos < end) {
+        final int lead = buffer.get(pos) & 0xFF;
+        final int length = lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+        int codePoint = length == 1 ? lead : lead & (0x3F >> (length - 1));
+        for (int i = 1; i < length; i++) {
+          codePoint = codePoint << 6 | buffer.get(pos + i) & 0x3F;
+        }
+        used.set(codePoint);
+        pos += length;
+      }
+      return used;
+    }
+  }
+
+  public static final String EXTENSION = ".pack";
+
+  private static final int FORMAT_VERSION = 3;
+  private static final int HEADER_SIZE = 32;
+  private static final int MAGIC = 0x514c4f50; // QLOP
+
+  /**
+   * Computes the CRC-32 of a file.
+   *
+   * @param file the file
+   * @return the CRC-32
+   * @throws IOException if the file can't be read
+   */
+  static long checksum(final File file) throws IOException {
+    final CRC32 crc = new CRC32();
+    final ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      while (channel.read(chunk) >= 0) {
+        chunk.flip();
+        crc.update(chunk);
+        chunk.clear();
+      }
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Returns the pack file that belongs to a Qur'an xml file.
+   *
+   * @param xmlFile the xml file
+   * @return the pack file
+   */
+  static File getPackFile(final File xmlFile) {
+    final String name = xmlFile.getName();
+    return new File(xmlFile.getParentFile(),
+        name.substring(0, name.length() - ".xml".length()) + EXTENSION);
+  }
+
+  /**
+   * Build step: converts all the Qur'an xml files in a directory into packs.
+   *
+   * @param args the directory, default resources/quran
+   */
+  public static void main(final String[] args) {
+    final File dir = new File(args.length > 0 ? args[0] : "resources/quran");
+    final File[] files = dir.listFiles((d, name) -> name.startsWith("QuranText.")
+        && name.toLowerCase().endsWith(".xml"));
+    if (files == null) {
+      System.err.println("Not a directory: " + dir);
+      System.exit(1);
+      return;
+    }
+
+    int failures = 0;
+    for (final File xmlFile : files) {
+      final File packFile = getPackFile(xmlFile);
+      try {
+        final AyahStore store = QuranReader.readAyat(xmlFile);
+        if (store == null) {
+          System.err.println("Skipped " + xmlFile.getName() + ": not a complete Qur'an text");
+          failures++;
+          continue;
+        }
+        write(store, packFile, xmlFile);
+        System.out.println(xmlFile.getName() + " -> " + packFile.getName());
+      } catch (final XMLStreamException | IOException e) {
+        e.printStackTrace();
+        failures++;
+      }
+    }
+    System.exit(failures == 0 ? 0 : 1);
+  }
+
+  /**
+   * Maps a pack into memory.
+   *
+   * @param packFile the pack
+   * @param xmlFile the xml file the pack must be built from
+   * @return a store reading from the mapped pack
+   * @throws IOException if the file can't be read, is not a valid pack or is out of date
+   */
+  static AyahStore map(final File packFile, final File xmlFile) throws IOException {
+    final MappedByteBuffer buffer;
+    try (RandomAccessFile raf = new RandomAccessFile(packFile, "r");
+        FileChannel channel = raf.getChannel()) {
+      // the mapping stays valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != AyahStore.SURAH_COUNT
+        || buffer.getInt(12) != AyahStore.getAyatCount()) {
+      throw new IOException("Not a Qur'an pack: " + packFile);
+    }
+    // the size first, it is known without reading the xml file
+    if (buffer.getLong(16) != xmlFile.length() || buffer.getLong(24) != checksum(xmlFile)) {
+      throw new IOException("Qur'an pack built from another xml file: " + packFile);
+    }
+
+    final int surahStart = HEADER_SIZE;
+    final int offsetStart = surahStart + 4 * (AyahStore.SURAH_COUNT + 1);
+    final int blobStart = offsetStart + 4 * (AyahStore.getAyatCount() + 1);
+    if (buffer.capacity() < blobStart) {
+      throw new IOException("Truncated Qur'an pack: " + packFile);
+    }
+    for (int s = 1; s <= AyahStore.SURAH_COUNT + 1; s++) {
+      if (buffer.getInt(surahStart + 4 * (s - 1)) != AyahStore.getSurahStart(s)) {
+        throw new IOException("Surah table does not match: " + packFile);
+      }
+    }
+    if (blobStart + buffer.getInt(blobStart - 4) != buffer.capacity()) {
+      throw new IOException("Truncated Qur'an pack: " + packFile);
+    }
+    return new MappedAyahStore(buffer, offsetStart, blobStart);
+  }
+
+  /**
+   * Writes a store as a pack.
+   *
+   * @param store the store
+   * @param packFile the pack
+   * @param xmlFile the xml file the store was read from
+   * @throws IOException if a file can't be read or written
+   */
+  static void write(final AyahStore store, final File packFile, final File xmlFile)
+      throws IOException {
+    final int count = AyahStore.getAyatCount();
+    final byte[][] texts = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      texts[i] = store.get(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(packFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(AyahStore.SURAH_COUNT);
+      out.writeInt(count);
+      out.writeLong(xmlFile.length());
+      out.writeLong(checksum(xmlFile));
+      for (int s = 1; s <= AyahStore.SURAH_COUNT + 1; s++) {
+        out.writeInt(AyahStore.getSurahStart(s));
+      }
+      int offset = 0;
+      out.writeInt(offset);
+      for (final byte[] text : texts) {
+        offset += text.length;
+        out.writeInt(offset);
+      }
+      for (final byte[] text : texts) {
+        out.write(text);
+      }
+    }
+  }
+
+  private QuranPack() {}
+}
@@ -18,25 +18,31 @@
 package nl.mossoft.loeiqt.helper;
 
 import com.sun.star.uno.XComponentContext;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Helper Class for reading Qur'an text from xml source.
  *
+ * <p>
+ * The text is served from an {@link AyahStore}: mapped from a precompiled {@link QuranPack} when
+ * one is present, otherwise read from the xml source one surah at a time, when the surah is first
+ * used. A store only ever adds surahs, so a reader can be shared between dialogs through
+ * {@link QuranReaderCache}.
+ * </p>
+ *
  * @author abdullah
  *
  */
@@ -96,8 +102,38 @@ public class QuranReader {
     return surahSizes[surahno - 1];
   }
 
-  private Document doc;
-  private XPath xpath = null;
+  private AyahStore store;
+
+  /**
+   * Creates a reader for a Qur'an xml file.
+   *
+   * @param file the xml file
+   */
+  public QuranReader(final File file) {
+    this(file, null);
+  }
+
+  /**
+   * Creates a reader for a Qur'an xml file.
+   *
+   * <p>
+   * If a pack built from the xml file is present next to it, the pack is mapped. Otherwise the
+   * surahs are read from the xml file when they are first used.
+   * </p>
+   *
+   * @param file the xml file
+   * @param indexDir the directory to persist the surah index in, or null to not persist it
+   */
+  public QuranReader(final File file, final File indexDir) {
+    store = mapPack(file);
+    if (store == null) {
+      try {
+        store = new LazyAyahStore(file, SurahIndex.open(file, indexDir));
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
 
   /**
    * Creates a document reader for the Qur'an xml files.
@@ -107,44 +143,101 @@ public class QuranReader {
    * @param context the document context.
    */
   public QuranReader(final String language, final String version, final XComponentContext context) {
-    try {
-      final DocumentBuilderFactory df = DocumentBuilderFactory.newInstance();
-      df.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-      df.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-      df.setNamespaceAware(true);
-
-      final DocumentBuilder builder = df.newDocumentBuilder();
-      doc = builder.parse(FileHelper.getQuranFilePath(getFilename(language, version), context));
+    this(FileHelper.getQuranFilePath(getFilename(language, version), context),
+        FileHelper.getUserDataPath(context));
+  }
 
-      // Create XPathFactory object
-      final XPathFactory xpathFactory = XPathFactory.newInstance();
+  /**
+   * Creates the factory for the xml stream readers, with external DTDs and entities disabled.
+   *
+   * @return the factory
+   */
+  static XMLInputFactory createXmlInputFactory() {
+    final XMLInputFactory xf = XMLInputFactory.newInstance();
+    xf.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    xf.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    xf.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    return xf;
+  }
 
-      // Create XPath object
-      xpath = xpathFactory.newXPath();
+  /**
+   * Returns the text of the ayat element the reader is at. An element without a text is an empty
+   * ayah.
+   *
+   * @param reader the reader, at the start of an ayat element
+   * @return the text
+   */
+  static String getAyahText(final XMLStreamReader reader) {
+    final String text = reader.getAttributeValue(null, "text");
+    return text == null ? "" : text;
+  }
 
-    } catch (ParserConfigurationException | SAXException | IOException e) {
+  /**
+   * Maps the pack of a Qur'an xml file.
+   *
+   * @param file the xml file
+   * @return the store or null if there is no up to date pack
+   */
+  private static AyahStore mapPack(final File file) {
+    final File packFile = QuranPack.getPackFile(file);
+    if (!packFile.isFile()) {
+      return null;
+    }
+    try {
+      // the modification times aren't kept by git or by installing the extension, the contents are
+      return QuranPack.map(packFile, file);
+    } catch (final IOException e) {
       e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Streams the text of all the ayat from the xml file into a store.
+   *
+   * @param file the xml file
+   * @return the store or null if the file is not a complete Qur'an text
+   * @throws XMLStreamException on malformed xml
+   * @throws IOException if the file can't be read
+   */
+  static AyahStore readAyat(final File file) throws XMLStreamException, IOException {
+    final ArrayAyahStore ayahStore = new ArrayAyahStore();
+
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      final XMLStreamReader reader = createXmlInputFactory().createXMLStreamReader(in);
+      try {
+        int surano = 0;
+        long ayano = 0;
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          if ("surah".equals(reader.getLocalName())) {
+            surano = Integer.parseInt(reader.getAttributeValue(null, "no"));
+            ayano = 0;
+          } else if ("ayat".equals(reader.getLocalName())) {
+            // the position counts, not the no attribute: it has typos in some translations
+            ayahStore.put(surano, ++ayano, getAyahText(reader));
+          }
+        }
+      } finally {
+        reader.close();
+      }
     }
+    return ayahStore.isComplete() ? ayahStore : null;
   }
 
   /**
-   * Read all the ayat of a surah from the xml source file.
+   * Read all the ayat of a surah.
    *
    * @param surano the surah
    * @return list of ayat.
    */
   public List<String> getAllAyatOfSuraNo(final int surano) {
-    final List<String> list = new ArrayList<>();
-    try {
-      final XPathExpression expr1 = xpath.compile("/quran/surah[@no='" + surano + "']/ayat/@text");
-      final NodeList nodes = (NodeList) expr1.evaluate(doc, XPathConstants.NODESET);
-      for (int i = 0; i < nodes.getLength(); i++) {
-        list.add(nodes.item(i).getNodeValue());
-      }
-    } catch (final XPathExpressionException e) {
-      e.printStackTrace();
+    if (surano < 1 || surano > AyahStore.SURAH_COUNT) {
+      return Collections.emptyList();
     }
-    return list;
+    return getAyatFromToOfSuraNo(surano, 1, getSurahSize(surano));
   }
 
   /**
@@ -152,34 +245,37 @@ public class QuranReader {
    *
    * @param surano the surah
    * @param ayano the ayah
-   * @return ayah
+   * @return ayah, or an empty string if it does not exist
    */
   public String getAyahNoOfSuraNo(final int surano, final long ayano) {
-    String aya = null;
-    try {
-      final XPathExpression expr =
-          xpath.compile("/quran/surah[@no='" + surano + "']/ayat[@no='" + ayano + "']/@text");
-      aya = (String) expr.evaluate(doc, XPathConstants.STRING);
-    } catch (final XPathExpressionException e) {
-      e.printStackTrace();
-    }
-    return aya;
+    final String aya = (store == null) ? null : store.get(surano, ayano);
+    return aya == null ? "" : aya;
   }
 
   /**
    * Get a range of ayat from a surah.
    *
+   * <p>
+   * The range is limited to the ayat of the surah. The list is a read-only view on the text, it is
+   * not copied.
+   * </p>
+   *
    * @param surano the surah
    * @param ayafrom the start ayah
    * @param ayato the last ayah
    * @return list of ayaht
    */
-  public List<String> getAyatFromToOfSuraNo(final int surano, final long ayafrom, final long ayato) {
-    final List<String> list = new ArrayList<>();
-    for (long ayano = ayafrom; ayano <= ayato; ayano++) {
-      list.add(getAyahNoOfSuraNo(surano, ayano));
+  public List<String> getAyatFromToOfSuraNo(final int surano, final long ayafrom,
+      final long ayato) {
+    if (store == null || surano < 1 || surano > AyahStore.SURAH_COUNT) {
+      return Collections.emptyList();
+    }
+    final long from = Math.max(ayafrom, 1);
+    final long to = Math.min(ayato, getSurahSize(surano));
+    if (from > to) {
+      return Collections.emptyList();
     }
-    return list;
+    return store.getRange(AyahStore.indexOf(surano, from), AyahStore.indexOf(surano, to) + 1);
   }
 
   /**
@@ -188,20 +284,75 @@ public class QuranReader {
    * @return Bismillah
    */
   public String getBismillah() {
-    String bismillah = null;
-    try {
-      final XPathExpression expr = xpath.compile("/quran/surah[@no='1']/ayat[@no='1']/@text");
-      bismillah = (String) expr.evaluate(doc, XPathConstants.STRING);
-    } catch (final XPathExpressionException e) {
-      e.printStackTrace();
+    return getAyahNoOfSuraNo(1, 1);
+  }
+
+  /**
+   * Returns the distinct characters of all the ayat.
+   *
+   * @return the code points, empty if the text isn't loaded
+   */
+  public BitSet getCodePoints() {
+    return store == null ? new BitSet() : store.getCodePoints();
+  }
+
+  /**
+   * Returns true if the xml source was read successfully.
+   *
+   * @return true if loaded
+   */
+  public boolean isLoaded() {
+    return store != null;
+  }
+
+  /**
+   * Reads the ayat of all surahs into memory, in the order of the mushaf, so later requests don't
+   * wait for the xml file. A surah that can't be read is skipped, a request for it reports why.
+   */
+  public void loadAllSurahs() {
+    for (int s = 1; s <= AyahStore.SURAH_COUNT; s++) {
+      try {
+        loadSurahs(s, s);
+      } catch (final UncheckedIOException e) {
+        // the surah is read again when it is requested
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Reads the ayat of a range of surahs into memory, so later requests don't wait for the xml
+   * file.
+   *
+   * @param firstSurah the first surah
+   * @param lastSurah the last surah
+   * @throws UncheckedIOException if one of the surahs can't be read
+   */
+  public void loadSurahs(final int firstSurah, final int lastSurah) {
+    if (store == null) {
+      return;
+    }
+    for (int s = Math.max(firstSurah, 1); s <= Math.min(lastSurah, AyahStore.SURAH_COUNT); s++) {
+      store.load(s);
+    }
+  }
+
+  /**
+   * Returns the installed text versions of a language, or of all the other languages.
+   *
+   * @param language the language
+   * @param include true for the versions of the language, false for those of the other languages
+   * @param context the component context
+   * @return the versions as language.version, sorted
+   */
+  public static String[] getQuranVersions(final String language, final boolean include,
+      final XComponentContext context) {
+    final List<QuranCatalog.Entry> entries =
+        QuranCatalog.get(context).getEntries(language, include);
+    final String[] versions = new String[entries.size()];
+    for (int i = 0; i < versions.length; i++) {
+      versions[i] = entries.get(i).getLanguage() + "." + entries.get(i).getVersion();
     }
-    return bismillah;
-  }
-  
- 
-  
-  public static String[] getQuranVersions(String language, boolean include) {
-    
-    return null;
+    return versions;
   }
 }
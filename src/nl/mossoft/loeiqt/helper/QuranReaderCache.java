@@ -0,0 +1,231 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import com.sun.star.uno.XComponentContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide cache of Qur'an readers, so every text version is read only once per office
+ * process and shared by all dialogs.
+ *
+ * <p>
+ * Versions can be preloaded in the background, the ayat of all their surahs included. A request
+ * for a version that is still being loaded waits for that load instead of starting its own.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class QuranReaderCache {
+
+  private static final AtomicLong HITS = new AtomicLong();
+  // reading is mostly parsing, more threads than versions in the dialog don't help
+  private static final ExecutorService LOADER = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors())),
+      newDaemonThreadFactory("QuranLO loader", Thread.NORM_PRIORITY));
+  private static final AtomicLong MISSES = new AtomicLong();
+  private static final ExecutorService PRELOADER = Executors.newSingleThreadExecutor(
+      newDaemonThreadFactory("QuranLO preloader", Thread.MIN_PRIORITY));
+  private static final Map<String, CompletableFuture<QuranReader>> READERS =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Removes all cached readers, the next request for a version reads it again.
+   */
+  public static void clear() {
+    READERS.clear();
+  }
+
+  /**
+   * Returns a source of ayat for an insertion plan that reads the text versions through the cache.
+   *
+   * @param context the component context
+   * @return the source
+   */
+  public static InsertionPlan.AyatSource getAyatSource(final XComponentContext context) {
+    return new InsertionPlan.AyatSource() {
+
+      @Override
+      public List<String> getAyat(final String language, final String version,
+          final int surahNumber, final long from, final long to) {
+        return getReader(language, version, context).getAyatFromToOfSuraNo(surahNumber, from, to);
+      }
+
+      @Override
+      public String getBismillah(final String language, final String version) {
+        return getReader(language, version, context).getBismillah();
+      }
+    };
+  }
+
+  /**
+   * Returns the number of requests served from the cache.
+   *
+   * @return the number of hits
+   */
+  public static long getHitCount() {
+    return HITS.get();
+  }
+
+  /**
+   * Returns the number of requests that had to read the text version.
+   *
+   * @return the number of misses
+   */
+  public static long getMissCount() {
+    return MISSES.get();
+  }
+
+  /**
+   * Get the reader for a Qur'an text version, reading it on first use. If the version is being
+   * preloaded, this waits until it is ready.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param context the component context
+   * @return the reader
+   */
+  public static QuranReader getReader(final String language, final String version,
+      final XComponentContext context) {
+    return load(language, version, context, Runnable::run).join();
+  }
+
+  /**
+   * Starts reading a Qur'an text version on one of the loader threads, so several versions can be
+   * read at the same time. If the version is cached or already being read, that read is returned.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param context the component context
+   * @return the reader, when it is ready
+   */
+  public static CompletableFuture<QuranReader> getReaderAsync(final String language,
+      final String version, final XComponentContext context) {
+    return load(language, version, context, LOADER);
+  }
+
+  /**
+   * Starts reading a Qur'an text version and then the ayat of a range of its surahs on one of the
+   * loader threads, so several versions can be read at the same time.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param firstSurah the first surah
+   * @param lastSurah the last surah
+   * @param context the component context
+   * @return the reader, when the surahs are read
+   */
+  public static CompletableFuture<QuranReader> getSurahsAsync(final String language,
+      final String version, final int firstSurah, final int lastSurah,
+      final XComponentContext context) {
+    return load(language, version, context, LOADER).thenApplyAsync(reader -> {
+      reader.loadSurahs(firstSurah, lastSurah);
+      return reader;
+    }, LOADER);
+  }
+
+  /**
+   * Reads a Qur'an text version, unless it is cached or already being read.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param context the component context
+   * @param executor runs the read if one is needed
+   * @return the reader, when it is ready
+   */
+  private static CompletableFuture<QuranReader> load(final String language, final String version,
+      final XComponentContext context, final Executor executor) {
+    final String key = language + "." + version;
+
+    final CompletableFuture<QuranReader> cached = READERS.get(key);
+    if (cached != null) {
+      HITS.incrementAndGet();
+      return cached;
+    }
+
+    final CompletableFuture<QuranReader> future = new CompletableFuture<>();
+    final CompletableFuture<QuranReader> other = READERS.putIfAbsent(key, future);
+    if (other != null) {
+      HITS.incrementAndGet();
+      return other;
+    }
+
+    MISSES.incrementAndGet();
+    executor.execute(() -> {
+      try {
+        final QuranReader reader = new QuranReader(language, version, context);
+        if (!reader.isLoaded()) {
+          // don't keep a failed read, so the next request tries again
+          READERS.remove(key, future);
+        }
+        future.complete(reader);
+      } catch (final RuntimeException e) {
+        READERS.remove(key, future);
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Creates a factory for named daemon threads, so the cache never keeps the office process alive.
+   *
+   * @param name the name of the threads
+   * @param priority the priority of the threads
+   * @return the factory
+   */
+  static ThreadFactory newDaemonThreadFactory(final String name, final int priority) {
+    final AtomicInteger count = new AtomicInteger();
+    return r -> {
+      final Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(priority);
+      return thread;
+    };
+  }
+
+  /**
+   * Starts reading a Qur'an text version on a low priority background thread, with the ayat of all
+   * its surahs, so the dialog finds them in memory.
+   *
+   * @param language the language of the version
+   * @param version the version
+   * @param context the component context
+   * @return the reader, when all surahs are read
+   */
+  public static Future<QuranReader> preload(final String language, final String version,
+      final XComponentContext context) {
+    return load(language, version, context, PRELOADER).thenApplyAsync(reader -> {
+      reader.loadAllSurahs();
+      return reader;
+    }, PRELOADER);
+  }
+
+  private QuranReaderCache() {}
+}
@@ -0,0 +1,240 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Byte range of every {@code <surah>} element in a Qur'an xml file.
+ *
+ * <p>
+ * The index is built with one scan over the raw bytes of the file, without parsing the xml, and can
+ * be persisted. A persisted index records the size and modification time of the xml file and is
+ * ignored when either has changed.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+final class SurahIndex {
+
+  private static final byte[] END_TAG = "</surah>".getBytes();
+  private static final String EXTENSION = ".idx";
+  private static final int FORMAT_VERSION = 1;
+  private static final int MAGIC = 0x514c4f49; // QLOI
+  private static final byte[] START_TAG = "<surah".getBytes();
+
+  /**
+   * Builds the index of an xml file by scanning it for surah tags.
+   *
+   * @param xmlFile the xml file
+   * @return the index
+   * @throws IOException if the file can't be read or has not 114 surahs
+   */
+  static SurahIndex build(final File xmlFile) throws IOException {
+    final long[] starts = new long[AyahStore.SURAH_COUNT];
+    final long[] ends = new long[AyahStore.SURAH_COUNT];
+    int surahs = 0;
+
+    try (InputStream in = new FileInputStream(xmlFile)) {
+      final byte[] buffer = new byte[64 * 1024];
+      long pos = 0;
+      int startMatch = 0;
+      int endMatch = 0;
+      boolean open = false;
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        for (int i = 0; i < read; i++, pos++) {
+          final byte b = buffer[i];
+          if (open) {
+            endMatch = (b == END_TAG[endMatch]) ? endMatch + 1 : (b == END_TAG[0] ? 1 : 0);
+            if (endMatch == END_TAG.length) {
+              ends[surahs++] = pos + 1;
+              endMatch = 0;
+              open = false;
+            }
+          } else if (startMatch == START_TAG.length) {
+            // <surah must be followed by white space or > to not match <surahs
+            if (b == '>' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+              if (surahs == AyahStore.SURAH_COUNT) {
+                throw new IOException("More than " + surahs + " surahs in " + xmlFile);
+              }
+              starts[surahs] = pos - START_TAG.length;
+              open = true;
+            }
+            startMatch = (b == START_TAG[0]) ? 1 : 0;
+          } else {
+            startMatch =
+                (b == START_TAG[startMatch]) ? startMatch + 1 : (b == START_TAG[0] ? 1 : 0);
+          }
+        }
+      }
+    }
+    if (surahs != AyahStore.SURAH_COUNT) {
+      throw new IOException("Found " + surahs + " surahs in " + xmlFile);
+    }
+    return new SurahIndex(xmlFile.length(), xmlFile.lastModified(), starts, ends);
+  }
+
+  /**
+   * Returns the file in which the index of an xml file is persisted.
+   *
+   * @param xmlFile the xml file
+   * @param indexDir the directory with the indexes
+   * @return the index file
+   */
+  private static File getIndexFile(final File xmlFile, final File indexDir) {
+    return new File(indexDir, xmlFile.getName() + EXTENSION);
+  }
+
+  /**
+   * Returns the index of an xml file, read from the index directory when it is still valid and
+   * otherwise built and saved.
+   *
+   * @param xmlFile the xml file
+   * @param indexDir the directory with the indexes, or null to not persist the index
+   * @return the index
+   * @throws IOException if the xml file can't be indexed
+   */
+  static SurahIndex open(final File xmlFile, final File indexDir) throws IOException {
+    if (indexDir == null) {
+      return build(xmlFile);
+    }
+
+    final File indexFile = getIndexFile(xmlFile, indexDir);
+    if (indexFile.isFile()) {
+      final SurahIndex index = read(indexFile);
+      if (index != null && index.fileSize == xmlFile.length()
+          && index.fileModified == xmlFile.lastModified()) {
+        return index;
+      }
+    }
+
+    final SurahIndex index = build(xmlFile);
+    try {
+      index.write(indexFile);
+    } catch (final IOException e) {
+      // the index is only a shortcut, it is built again next time
+      e.printStackTrace();
+    }
+    return index;
+  }
+
+  /**
+   * Reads a persisted index.
+   *
+   * @param indexFile the index file
+   * @return the index or null if the file is not a valid index
+   */
+  private static SurahIndex read(final File indexFile) {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+          || in.readInt() != AyahStore.SURAH_COUNT) {
+        return null;
+      }
+      final long fileSize = in.readLong();
+      final long fileModified = in.readLong();
+      final long[] starts = new long[AyahStore.SURAH_COUNT];
+      final long[] ends = new long[AyahStore.SURAH_COUNT];
+      for (int i = 0; i < AyahStore.SURAH_COUNT; i++) {
+        starts[i] = in.readLong();
+        ends[i] = in.readLong();
+      }
+      return new SurahIndex(fileSize, fileModified, starts, ends);
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  private final long[] ends;
+  private final long fileModified;
+  private final long fileSize;
+  private final long[] starts;
+
+  private SurahIndex(final long fileSize, final long fileModified, final long[] starts,
+      final long[] ends) {
+    this.fileSize = fileSize;
+    this.fileModified = fileModified;
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  /**
+   * Returns the offset of the byte after the end tag of a surah.
+   *
+   * @param surano the surah
+   * @return the offset
+   */
+  long getEnd(final int surano) {
+    return ends[surano - 1];
+  }
+
+  /**
+   * Returns the offset of the start tag of a surah.
+   *
+   * @param surano the surah
+   * @return the offset
+   */
+  long getStart(final int surano) {
+    return starts[surano - 1];
+  }
+
+  /**
+   * Persists the index.
+   *
+   * @param indexFile the index file
+   * @throws IOException if the file can't be written
+   */
+  private void write(final File indexFile) throws IOException {
+    // write to a temporary file of its own first, another office sharing the profile may write
+    // the same index, and replace the index in one step, so a reader never sees a partial index
+    final Path tmpFile =
+        Files.createTempFile(indexFile.getAbsoluteFile().getParentFile().toPath(),
+            indexFile.getName(), ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(AyahStore.SURAH_COUNT);
+        out.writeLong(fileSize);
+        out.writeLong(fileModified);
+        for (int i = 0; i < AyahStore.SURAH_COUNT; i++) {
+          out.writeLong(starts[i]);
+          out.writeLong(ends[i]);
+        }
+      }
+      Files.move(tmpFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      // nothing is left after a failure, after the move there is nothing to delete
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+}
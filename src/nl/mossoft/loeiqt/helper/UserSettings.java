@@ -0,0 +1,103 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import com.sun.star.uno.XComponentContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Settings of the extension that are kept in the user profile, like the last used versions.
+ *
+ * @author abdullah
+ *
+ */
+public class UserSettings {
+
+  public static final String LAST_ARABIC_VERSION = "last.arabic.version";
+  public static final String LAST_TRANSLATION_LANGUAGE = "last.translation.language";
+  public static final String LAST_TRANSLATION_VERSION = "last.translation.version";
+
+  private static final String SETTINGS_FILE = "settings.properties";
+
+  /**
+   * Reads the settings from the user profile.
+   *
+   * @param context the component context
+   * @return the settings, empty if there are none yet
+   */
+  public static UserSettings load(final XComponentContext context) {
+    final File dir = FileHelper.getUserDataPath(context);
+    final UserSettings settings =
+        new UserSettings(dir == null ? null : new File(dir, SETTINGS_FILE));
+    if (settings.file != null && settings.file.isFile()) {
+      try (InputStream in = new FileInputStream(settings.file)) {
+        settings.properties.load(in);
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return settings;
+  }
+
+  private final File file;
+  private final Properties properties = new Properties();
+
+  private UserSettings(final File file) {
+    this.file = file;
+  }
+
+  /**
+   * Get a setting.
+   *
+   * @param key the key of the setting
+   * @return the value or null if it is not set
+   */
+  public String get(final String key) {
+    return properties.getProperty(key);
+  }
+
+  /**
+   * Writes the settings to the user profile.
+   */
+  public void save() {
+    if (file == null) {
+      return;
+    }
+    try (OutputStream out = new FileOutputStream(file)) {
+      properties.store(out, "QuranLO settings");
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Change a setting. Call {@link #save()} to keep it.
+   *
+   * @param key the key of the setting
+   * @param value the value
+   */
+  public void set(final String key, final String value) {
+    properties.setProperty(key, value);
+  }
+}
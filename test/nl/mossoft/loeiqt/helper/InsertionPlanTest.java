@@ -0,0 +1,185 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests how an {@link InsertionPlan} divides a passage into batches.
+ *
+ * <p>
+ * The Arabic font has a fixed digit base, so the plans don't look at the installed fonts.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class InsertionPlanTest {
+
+  private static final String ARABIC_FONT = "Scheherazade";
+  private static final String TRANSLATION_FONT = "Liberation Serif";
+
+  /**
+   * Returns a builder for a plan of surahs in the Arabic text.
+   *
+   * @param first the first surah
+   * @param last the last surah
+   * @param layout the layout
+   * @return the builder
+   */
+  private static InsertionPlan.Builder arabic(final int first, final int last,
+      final InsertionPlan.Layout layout) {
+    return InsertionPlan.builder().surahs(first, last).layout(layout).text("Arabic", "Medina",
+        ARABIC_FONT);
+  }
+
+  /**
+   * Checks that the batches of a surah follow each other without a gap, from its first ayah to
+   * the ayah after its last.
+   *
+   * @param batches the batches of the surah
+   * @param from the first ayah
+   * @param to the ayah after the last
+   */
+  private static void assertContiguous(final List<InsertionPlan.Batch> batches, final long from,
+      final long to) {
+    long next = from;
+    for (final InsertionPlan.Batch batch : batches) {
+      assertEquals(next, batch.getFrom());
+      assertTrue(batch.getTo() > batch.getFrom());
+      assertTrue(batch.getTo() - batch.getFrom() <= InsertionPlan.BATCH_AYAT);
+      next = batch.getTo();
+    }
+    assertEquals(to, next);
+  }
+
+  @Test
+  public void ayatRangeEndsAfterItsLastAyah() {
+    final InsertionPlan plan =
+        arabic(2, 2, InsertionPlan.Layout.LINE_BY_LINE).ayat(5, 44).build();
+
+    assertEquals(2, plan.getBatches().size());
+    assertContiguous(plan.getBatches(), 5, 45);
+    assertEquals(40, plan.getAyatCount());
+  }
+
+  @Test
+  public void ayatRangeIsIgnoredForSeveralSurahs() {
+    final InsertionPlan plan =
+        arabic(1, 2, InsertionPlan.Layout.LINE_BY_LINE).ayat(5, 10).build();
+
+    assertEquals(7 + 286, plan.getAyatCount());
+  }
+
+  @Test
+  public void batchesHaveBatchAyat() {
+    final InsertionPlan plan = arabic(2, 2, InsertionPlan.Layout.LINE_BY_LINE).build();
+    final List<InsertionPlan.Batch> batches = plan.getBatches();
+
+    // 286 ayat: 14 full batches and one of 6
+    assertEquals(15, batches.size());
+    assertContiguous(batches, 1, 287);
+    assertEquals(1 + InsertionPlan.BATCH_AYAT, batches.get(0).getTo());
+    assertEquals(281, batches.get(14).getFrom());
+    assertEquals(286, plan.getAyatCount());
+  }
+
+  @Test
+  public void bismillahIsSkippedForAlFatihahAndAtTawbah() {
+    final InsertionPlan plan = arabic(1, 10, InsertionPlan.Layout.LINE_BY_LINE).build();
+
+    for (final InsertionPlan.Batch batch : plan.getBatches()) {
+      final int surah = batch.getSurahNumber();
+      assertEquals("surah " + surah + " ayah " + batch.getFrom(),
+          batch.getFrom() == 1 && surah != 1 && surah != 9, batch.hasBismillah());
+    }
+    assertFalse(InsertionPlan.hasBismillah(1));
+    assertFalse(InsertionPlan.hasBismillah(9));
+    assertTrue(InsertionPlan.hasBismillah(2));
+    assertTrue(InsertionPlan.hasBismillah(114));
+  }
+
+  @Test
+  public void bismillahIsSkippedForAnAyatRange() {
+    final InsertionPlan plan = arabic(2, 2, InsertionPlan.Layout.LINE_BY_LINE).ayat(2, 3).build();
+
+    assertFalse(plan.getBatches().get(0).hasBismillah());
+  }
+
+  @Test
+  public void blockHasBatchesPerText() {
+    final InsertionPlan plan = arabic(2, 3, InsertionPlan.Layout.BLOCK)
+        .text("English", "Pickthall", TRANSLATION_FONT).build();
+    final List<InsertionPlan.Batch> batches = plan.getBatches();
+
+    // surah 2: 15 batches per text, surah 3 of 200 ayat: 10 batches per text
+    assertEquals(2 * 15 + 2 * 10, batches.size());
+    assertContiguous(batches.subList(0, 15), 1, 287);
+    assertContiguous(batches.subList(15, 30), 1, 287);
+    assertContiguous(batches.subList(30, 40), 1, 201);
+    assertContiguous(batches.subList(40, 50), 1, 201);
+    // only the first batch of the first text has the heading
+    assertTrue(batches.get(0).hasHeading());
+    assertFalse(batches.get(15).hasHeading());
+    assertTrue(batches.get(30).hasHeading());
+    assertEquals(2 * (286 + 200), plan.getAyatCount());
+  }
+
+  @Test
+  public void headingsOnlyForSeveralSurahs() {
+    final InsertionPlan single = arabic(2, 2, InsertionPlan.Layout.LINE_BY_LINE).build();
+    assertFalse(single.hasHeadings());
+    for (final InsertionPlan.Batch batch : single.getBatches()) {
+      assertFalse(batch.hasHeading());
+    }
+
+    final InsertionPlan several = arabic(112, 114, InsertionPlan.Layout.LINE_BY_LINE).build();
+    assertTrue(several.hasHeadings());
+    for (final InsertionPlan.Batch batch : several.getBatches()) {
+      assertEquals(batch.getFrom() == 1, batch.hasHeading());
+    }
+  }
+
+  @Test
+  public void tableHasOneBatchPerSurah() {
+    final InsertionPlan plan = arabic(1, 3, InsertionPlan.Layout.TABLE)
+        .text("English", "Pickthall", TRANSLATION_FONT).build();
+    final List<InsertionPlan.Batch> batches = plan.getBatches();
+
+    assertEquals(3, batches.size());
+    for (int i = 0; i < batches.size(); i++) {
+      final InsertionPlan.Batch batch = batches.get(i);
+      assertEquals(i + 1, batch.getSurahNumber());
+      assertEquals(1, batch.getFrom());
+      assertEquals(QuranReader.getSurahSize(i + 1) + 1, batch.getTo());
+      assertTrue(batch.hasHeading());
+    }
+    assertEquals(2 * (7 + 286 + 200), plan.getAyatCount());
+    assertEquals(2, plan.getColumnStyles().length);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void textIsRequired() {
+    InsertionPlan.builder().surahs(1, 1).build();
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * This file is part of QuranLO
+ *
+ * Copyright (C) 2020 <mossie@mossoft.nl>
+ *
+ * QuranLO is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <https://www.gnu.org/licenses/>.
+ */
+
+package nl.mossoft.loeiqt.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.star.beans.XMultiPropertySet;
+import com.sun.star.document.XDocumentInsertable;
+import com.sun.star.lang.XMultiComponentFactory;
+import com.sun.star.text.XParagraphCursor;
+import com.sun.star.text.XText;
+import com.sun.star.text.XTextRange;
+import com.sun.star.ucb.XFileIdentifierConverter;
+import com.sun.star.uno.XComponentContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import nl.mossoft.loeiqt.helper.InsertionPlan.Paragraph;
+import org.junit.Test;
+
+/**
+ * Tests the calls a {@link PassageWriter} makes to the office.
+ *
+ * <p>
+ * The text, its cursors and the component context are recording fakes: every call to them would
+ * cross the UNO bridge, so the test counts them and checks them against a budget that depends on
+ * the number of batches and not on the number of ayat.
+ * </p>
+ *
+ * @author abdullah
+ *
+ */
+public class PassageWriterTest {
+
+  /**
+   * Answers the calls to the fake office objects and counts them by method name.
+   */
+  private static final class Office implements InvocationHandler {
+
+    private final Map<String, Integer> calls = new HashMap<>();
+    private final boolean fragments;
+
+    /**
+     * Constructor.
+     *
+     * @param fragments false if inserting a fragment fails
+     */
+    private Office(final boolean fragments) {
+      this.fragments = fragments;
+    }
+
+    /**
+     * Returns the number of calls to a method.
+     *
+     * @param name the name of the method
+     * @return the number of calls
+     */
+    private int count(final String name) {
+      return calls.getOrDefault(name, 0);
+    }
+
+    /**
+     * Creates a fake office object.
+     *
+     * @param interfaces the interfaces of the object
+     * @return the object
+     */
+    private Object create(final Class<?>... interfaces) {
+      return Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        return method.invoke(this, args);
+      }
+      calls.merge(method.getName(), 1, Integer::sum);
+      switch (method.getName()) {
+        case "createInstanceWithContext":
+          return create(XFileIdentifierConverter.class);
+        case "createTextCursorByRange":
+          return create(XParagraphCursor.class, XMultiPropertySet.class,
+              XDocumentInsertable.class);
+        case "getFileURLFromSystemPath":
+          return "file://" + args[1];
+        case "getServiceManager":
+          return create(XMultiComponentFactory.class);
+        case "getStart":
+          return create(XTextRange.class);
+        case "insertDocumentFromURL":
+          if (!fragments) {
+            throw new com.sun.star.io.IOException("no fragments");
+          }
+          return null;
+        default:
+          return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+      }
+    }
+
+    /**
+     * Returns the total number of calls.
+     *
+     * @return the number of calls
+     */
+    private int total() {
+      return calls.values().stream().mapToInt(Integer::intValue).sum();
+    }
+  }
+
+  private static final String ARABIC_FONT = "Scheherazade";
+  // the calls of one batch: positioning the cursor, the fragment URL, a paragraph and the insert
+  private static final int CALLS_PER_BATCH = 12;
+  // the calls of creating the writer
+  private static final int CALLS_PER_PASSAGE = 4;
+
+  /**
+   * Returns ayat that say where they are from.
+   */
+  private static final InsertionPlan.AyatSource SOURCE = new InsertionPlan.AyatSource() {
+
+    @Override
+    public List<String> getAyat(final String language, final String version,
+        final int surahNumber, final long from, final long to) {
+      final List<String> ayat = new ArrayList<>();
+      for (long a = from; a <= to; a++) {
+        ayat.add(language + " " + surahNumber + ":" + a);
+      }
+      return ayat;
+    }
+
+    @Override
+    public String getBismillah(final String language, final String version) {
+      return language + " Bismillah";
+    }
+  };
+  private static final String TRANSLATION_FONT = "Liberation Serif";
+
+  /**
+   * Returns a builder for a plan in Arabic and English.
+   *
+   * @param layout the layout
+   * @return the builder
+   */
+  private static InsertionPlan.Builder arabicAndEnglish(final InsertionPlan.Layout layout) {
+    return InsertionPlan.builder().layout(layout).text("Arabic", "Medina", ARABIC_FONT)
+        .text("English", "Pickthall", TRANSLATION_FONT);
+  }
+
+  /**
+   * Writes all the batches of a plan.
+   *
+   * @param plan the plan
+   * @param office the fake office
+   * @throws Exception on a failure
+   */
+  private static void write(final InsertionPlan plan, final Office office) throws Exception {
+    final XText text = (XText) office.create(XText.class);
+    final XParagraphCursor paragraphCursor =
+        (XParagraphCursor) office.create(XParagraphCursor.class);
+    final PassageWriter passage =
+        new PassageWriter((XComponentContext) office.create(XComponentContext.class), text,
+            paragraphCursor, fragment -> fragment.addParagraphStyle(InsertionPlan.STYLE_ARABIC,
+                true, ARABIC_FONT, 20));
+    for (final InsertionPlan.Batch batch : plan.getBatches()) {
+      passage.write(plan.render(batch, SOURCE));
+    }
+  }
+
+  @Test
+  public void callsDependOnBatchesNotOnAyat() throws Exception {
+    final Office oneAyah = new Office(true);
+    write(arabicAndEnglish(InsertionPlan.Layout.LINE_BY_LINE).surahs(2, 2).ayat(1, 1).build(),
+        oneAyah);
+    final Office fullBatch = new Office(true);
+    write(arabicAndEnglish(InsertionPlan.Layout.LINE_BY_LINE).surahs(2, 2).ayat(1,
+        InsertionPlan.BATCH_AYAT).build(), fullBatch);
+
+    assertEquals(oneAyah.total(), fullBatch.total());
+  }
+
+  @Test
+  public void fragmentsStayWithinTheBudget() throws Exception {
+    for (final InsertionPlan.Layout layout : new InsertionPlan.Layout[] {
+        InsertionPlan.Layout.LINE_BY_LINE, InsertionPlan.Layout.BLOCK}) {
+      final InsertionPlan plan = arabicAndEnglish(layout).surahs(1, 3).build();
+      final Office office = new Office(true);
+      write(plan, office);
+
+      final int batches = plan.getBatches().size();
+      assertEquals(batches, office.count("insertDocumentFromURL"));
+      assertEquals(0, office.count("insertString"));
+      assertTrue(layout + ": " + office.total() + " calls for " + batches + " batches",
+          office.total() <= CALLS_PER_PASSAGE + batches * CALLS_PER_BATCH);
+    }
+  }
+
+  @Test
+  public void paragraphsAfterAFailedFragment() throws Exception {
+    final InsertionPlan plan = arabicAndEnglish(InsertionPlan.Layout.LINE_BY_LINE).surahs(1, 2)
+        .build();
+    final Office office = new Office(false);
+    write(plan, office);
+
+    int paragraphs = 0;
+    int newParagraphs = 0;
+    for (final InsertionPlan.Batch batch : plan.getBatches()) {
+      for (final Paragraph paragraph : plan.render(batch, SOURCE)) {
+        paragraphs++;
+        newParagraphs += paragraph.isContinued() ? 0 : 1;
+      }
+    }
+    // only the first batch tries a fragment, its paragraph is removed again
+    assertEquals(1, office.count("insertDocumentFromURL"));
+    assertEquals(1, office.count("setString"));
+    assertEquals(newParagraphs + 1, office.count("insertControlCharacter"));
+    assertEquals(paragraphs, office.count("insertString"));
+  }
+}